@@ -0,0 +1,377 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks, on random schedules, the two parts of an AirlineSystem that are the
+ * easiest to get subtly wrong and the hardest to see wrong from the test
+ * client: the minimum spanning forest that is kept up to date as routes and
+ * cities come and go, and the atomicity of batches as seen by queries running
+ * while they are committed.
+ *
+ * The forest check makes random changes, one at a time and in batches, and
+ * after each one compares the MSTs with a minimum spanning forest computed
+ * from scratch with Kruskal's algorithm. Each MST must be a tree of routes
+ * in the schedule that spans a whole connected component, and the forest must
+ * cost what Kruskal's does. Every other system keeps its schedule off the heap
+ * and every third starts with a forest that is not computed yet, so that both
+ * the incremental path and the recomputation are compared.
+ *
+ * The batch check has one thread commit batches that replace a group of
+ * cities hanging off a base network with a new group of the same shape, and
+ * move a base route by deleting and adding it again, while other threads
+ * query. A query that sees part of a batch finds two groups or none, or a
+ * forest of the wrong cost.
+ *
+ * Usage: java AirlineCheck [--rounds n] [--batches n] [--readers n] [--seed s]
+ */
+final public class AirlineCheck {
+
+  private static final int GROUP = 5; // the cities in each batch's group.
+  private static final String HUB = "B0"; // the base city the group hangs off.
+
+  /**
+   * Runs the checks and prints what they compared; a failed check throws.
+   */
+  public static void main(String[] args) throws Exception {
+    int rounds = 200;
+    int batches = 2000;
+    int readers = 3;
+    long seed = 1;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--rounds":
+          rounds = Integer.parseInt(args[++i]);
+          break;
+        case "--batches":
+          batches = Integer.parseInt(args[++i]);
+          break;
+        case "--readers":
+          readers = Integer.parseInt(args[++i]);
+          break;
+        case "--seed":
+          seed = Long.parseLong(args[++i]);
+          break;
+        default:
+          System.err.println("Usage: java AirlineCheck [--rounds n] [--batches n] "
+              + "[--readers n] [--seed s]");
+          System.exit(2);
+      }
+    }
+
+    System.out.printf("forest: %d schedules, %d comparisons with Kruskal%n", rounds,
+        checkForest(rounds, new Random(seed)));
+    System.out.printf("batches: %d batches, %d queries while committing%n", batches,
+        checkBatches(batches, readers, new Random(seed)));
+  }
+
+  /**
+   * compares the MSTs with Kruskal's after every change to random schedules
+   *
+   * @param rounds the number of schedules to check
+   * @param random the source of the changes
+   * @return the number of comparisons made
+   */
+  public static int checkForest(int rounds, Random random) throws CityNotFoundException {
+    int compared = 0;
+    for (int round = 0; round < rounds; round++) {
+      AirlineSystem airline = new AirlineSystem(round % 2 == 1);
+      int n = 3 + random.nextInt(40);
+      // few distinct prices make many ties, which the forest must break
+      // the same way whichever route it saw first.
+      int prices = (round % 4 < 2) ? 6 : 1000;
+
+      AirlineSystem.Batch batch = airline.beginBatch();
+      for (int i = 0; i < n; i++)
+        batch.addCity("C" + i);
+      for (int k = n * (1 + random.nextInt(3)); k > 0; k--) {
+        int p = random.nextInt(n);
+        int q = random.nextInt(n);
+        if (p != q)
+          batch.addRoute("C" + p, "C" + q, 1, 1 + random.nextInt(prices));
+      }
+      batch.commit();
+      if (round % 3 != 0)
+        airline.getMSTs();
+
+      int next = n;
+      for (int op = 0; op < 60; op++) {
+        List<String> cities = new ArrayList<String>(airline.retrieveCityNames());
+        if (cities.size() < 2) {
+          airline.addCity("C" + next++);
+          airline.addCity("C" + next++);
+          continue;
+        }
+
+        String p = cities.get(random.nextInt(cities.size()));
+        String q = cities.get(random.nextInt(cities.size()));
+        int kind = random.nextInt(10);
+        if (kind < 4) {
+          // deleting a route the forest holds is the case that searches for
+          // a replacement, so most deletions pick one of p's routes.
+          Set<Route> routes = airline.retrieveDirectRoutesFrom(p);
+          if (!routes.isEmpty() && random.nextInt(4) != 0)
+            q = new ArrayList<Route>(routes).get(random.nextInt(routes.size())).destination;
+          if (!p.equals(q))
+            airline.deleteRoute(p, q);
+        } else if (kind < 5) {
+          airline.deleteCity(p);
+        } else if (kind < 6) {
+          airline.addCity("C" + next++);
+        } else if (kind < 9) {
+          if (!p.equals(q))
+            airline.addRoute(p, q, 1, 1 + random.nextInt(prices));
+        } else {
+          batch = airline.beginBatch();
+          for (int k = 0; k < 4; k++) {
+            String u = cities.get(random.nextInt(cities.size()));
+            String v = cities.get(random.nextInt(cities.size()));
+            if (u.equals(v))
+              continue;
+            if (random.nextBoolean())
+              batch.deleteRoute(u, v);
+            else
+              batch.addRoute(u, v, 1, 1 + random.nextInt(prices));
+          }
+          batch.commit();
+        }
+
+        compare(airline, "round " + round + ", change " + op);
+        compared++;
+      }
+    }
+    return compared;
+  }
+
+  // checks that the MSTs of airline are a minimum spanning forest of it.
+  private static void compare(AirlineSystem airline, String where)
+      throws CityNotFoundException {
+    List<String> cities = new ArrayList<String>(airline.retrieveCityNames());
+    Map<String, Integer> index = new HashMap<String, Integer>();
+    for (String city : cities)
+      index.put(city, index.size());
+
+    List<Route> routes = new ArrayList<Route>();
+    for (String city : cities)
+      for (Route route : airline.retrieveDirectRoutesFrom(city))
+        if (route.source.compareTo(route.destination) < 0)
+          routes.add(route);
+    routes.sort(Comparator.comparingDouble((Route route) -> route.price));
+
+    // Kruskal's algorithm, which also leaves the components in component.
+    int[] component = new int[cities.size()];
+    for (int i = 0; i < component.length; i++)
+      component[i] = i;
+    double cost = 0;
+    int trees = cities.size();
+    for (Route route : routes) {
+      int s = find(component, index.get(route.source));
+      int d = find(component, index.get(route.destination));
+      if (s != d) {
+        component[s] = d;
+        cost += route.price;
+        trees--;
+      }
+    }
+    int[] size = new int[cities.size()];
+    for (int i = 0; i < component.length; i++)
+      size[find(component, i)]++;
+    for (int i = 0; i < component.length; i++)
+      if (find(component, i) == i && size[i] == 1)
+        trees--; // a city without routes has no MST.
+
+    double mstCost = 0;
+    int mstTrees = 0;
+    for (Set<Route> mst : airline.getMSTs()) {
+      if (mst.isEmpty())
+        continue;
+
+      Set<String> spanned = new HashSet<String>();
+      int root = -1;
+      for (Route route : mst) {
+        if (!route.equals(airline.retrieveDirectRoute(route.source, route.destination)))
+          fail(where, "the MSTs hold a route not in the schedule: " + route);
+        int c = find(component, index.get(route.source));
+        if (root != -1 && c != root)
+          fail(where, "an MST joins two components");
+        root = c;
+        spanned.add(route.source);
+        spanned.add(route.destination);
+        mstCost += route.price;
+      }
+      if (spanned.size() != mst.size() + 1)
+        fail(where, "an MST is not a tree: " + mst);
+      if (spanned.size() != size[root])
+        fail(where, "an MST spans " + spanned.size() + " of the " + size[root]
+            + " cities of its component");
+      mstTrees++;
+    }
+
+    if (mstTrees != trees)
+      fail(where, mstTrees + " MSTs, but " + trees + " components");
+    if (mstCost != cost)
+      fail(where, "the MSTs cost " + mstCost + ", but Kruskal's cost " + cost);
+  }
+
+  // finds the root of i, halving the path to it on the way.
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * commits batches while other threads query, and checks that no query sees
+   * part of a batch
+   *
+   * @param batches the number of batches to commit
+   * @param readers the number of threads querying
+   * @param random  the source of the base network
+   * @return the number of queries checked
+   */
+  public static long checkBatches(int batches, int readers, Random random)
+      throws InterruptedException, CityNotFoundException {
+    AirlineSystem airline = new AirlineSystem();
+    int n = 50;
+    AirlineSystem.Batch batch = airline.beginBatch();
+    for (int i = 0; i < n; i++)
+      batch.addCity("B" + i);
+    for (int i = 1; i < n; i++)
+      batch.addRoute("B" + random.nextInt(i), "B" + i, 1, 1 + random.nextInt(20));
+    for (int k = 0; k < 2 * n; k++) {
+      int p = random.nextInt(n);
+      int q = random.nextInt(n);
+      if (p != q)
+        batch.addRoute("B" + p, "B" + q, 1, 1 + random.nextInt(20));
+    }
+    batch.commit();
+    List<Route> base = new ArrayList<Route>();
+    for (String city : airline.retrieveCityNames())
+      for (Route route : airline.retrieveDirectRoutesFrom(city))
+        if (route.source.compareTo(route.destination) < 0)
+          base.add(route);
+
+    double baseCost = 0;
+    for (Set<Route> mst : airline.getMSTs())
+      for (Route route : mst)
+        baseCost += route.price;
+
+    // every group is a path of the same prices hanging off HUB, so all of it
+    // is in the forest and every committed version costs the same.
+    double cost = baseCost;
+    addGroup(batch = airline.beginBatch(), 0);
+    batch.commit();
+    for (int j = 0; j < GROUP; j++)
+      cost += j + 1;
+
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicLong queries = new AtomicLong();
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    double expected = cost;
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int r = 0; r < readers; r++) {
+      int first = r;
+      Thread thread = new Thread(() -> {
+        try {
+          for (int q = first; !done.get(); q++) {
+            readGroup(airline, q % 3, expected);
+            queries.incrementAndGet();
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    try {
+      for (int g = 1; g <= batches && failure.get() == null; g++) {
+        batch = airline.beginBatch();
+        for (int j = 0; j < GROUP; j++)
+          batch.deleteCity("G" + (g - 1) + "-" + j);
+        addGroup(batch, g);
+        Route moved = base.get(random.nextInt(base.size()));
+        batch.deleteRoute(moved.source, moved.destination);
+        batch.addRoute(moved.source, moved.destination, moved.distance, moved.price);
+        batch.commit();
+        // let the readers run between commits even on a single processor.
+        Thread.yield();
+      }
+    } finally {
+      done.set(true);
+      for (Thread thread : threads)
+        thread.join();
+    }
+
+    if (failure.get() != null)
+      throw new IllegalStateException("a query saw part of a batch", failure.get());
+    readGroup(airline, 1, expected);
+    return queries.get();
+  }
+
+  // records the cities and routes of group g in batch.
+  private static void addGroup(AirlineSystem.Batch batch, int g) {
+    for (int j = 0; j < GROUP; j++)
+      batch.addCity("G" + g + "-" + j);
+    batch.addRoute(HUB, "G" + g + "-0", 1, 1);
+    for (int j = 1; j < GROUP; j++)
+      batch.addRoute("G" + g + "-" + (j - 1), "G" + g + "-" + j, 1, j + 1);
+  }
+
+  // checks, with one query of the given kind, that airline holds exactly one
+  // whole group.
+  private static void readGroup(AirlineSystem airline, int kind, double cost)
+      throws CityNotFoundException {
+    switch (kind) {
+      case 0: {
+        Set<String> groups = new HashSet<String>();
+        int cities = 0;
+        for (String city : airline.retrieveCityNames())
+          if (city.startsWith("G")) {
+            groups.add(city.substring(0, city.indexOf('-')));
+            cities++;
+          }
+        if (groups.size() != 1 || cities != GROUP)
+          throw new IllegalStateException(cities + " group cities in groups " + groups);
+        break;
+      }
+      case 1: {
+        double total = 0;
+        int trees = 0;
+        for (Set<Route> mst : airline.getMSTs()) {
+          for (Route route : mst)
+            total += route.price;
+          if (!mst.isEmpty())
+            trees++;
+        }
+        if (trees != 1 || total != cost)
+          throw new IllegalStateException(trees + " MSTs costing " + total
+              + " instead of one costing " + cost);
+        break;
+      }
+      default: {
+        int links = 0;
+        for (Route route : airline.retrieveDirectRoutesFrom(HUB))
+          if (route.destination.startsWith("G"))
+            links++;
+        if (links != 1)
+          throw new IllegalStateException(HUB + " has routes to " + links + " groups");
+      }
+    }
+  }
+
+  private static void fail(String where, String message) {
+    throw new IllegalStateException(where + ": " + message);
+  }
+}
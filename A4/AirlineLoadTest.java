@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends queries between random cities to an AirlineServer and reports the
+ * throughput and the latency percentiles it sees.
+ *
+ * By default every connection sends its next query as soon as the last is
+ * answered, which measures the most the server can take. Given a rate, the
+ * queries are instead sent on a fixed schedule, and each latency is counted
+ * from the time its query was due rather than the time it went out; a server
+ * that falls behind then shows the wait of every query queued behind a slow
+ * one, which a closed loop hides. Limiting the queries to a few origins, as
+ * when most travellers leave from a handful of home airports, shows what the
+ * server gains from batching fare lookups by source.
+ *
+ * Usage: java AirlineLoadTest url [--endpoint fare|cheapest|best|reachable|routes]
+ * [--connections c] [--seconds s] [--warmup s] [--rate queries-per-second]
+ * [--origins n] [--seed s]
+ */
+final public class AirlineLoadTest {
+
+  private final URI base;
+  private final String endpoint;
+  private final int connections;
+  private final double rate; // 0 for a closed loop.
+  private final int origins; // the number of cities queries leave from.
+  private final HttpClient client;
+  private final String[] cities;
+
+  /**
+   * @param base        the URI the server listens on
+   * @param endpoint    the endpoint to query, without its leading slash
+   * @param connections the number of queries in flight at once
+   * @param rate        the queries per second for all connections together,
+   *                    or 0 to send as fast as the server answers
+   * @param origins     the number of cities the queries leave from, or 0 for
+   *                    any city
+   */
+  public AirlineLoadTest(URI base, String endpoint, int connections, double rate,
+      int origins) throws IOException, InterruptedException {
+    if (connections < 1)
+      throw new IllegalArgumentException("connections must be positive: " + connections);
+
+    this.base = base;
+    this.endpoint = endpoint;
+    this.connections = connections;
+    this.rate = rate;
+    this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+        .executor(AirlineServer.newRequestExecutor()).build();
+    this.cities = cities(get(base.resolve("/cities")));
+    this.origins = (origins <= 0) ? cities.length : Math.min(origins, cities.length);
+  }
+
+  /**
+   * sends queries for a given time
+   *
+   * @param seconds the number of seconds to send queries for
+   * @param seed    the seed of the random cities queried
+   * @return the Result of the run
+   */
+  public Result run(double seconds, long seed) throws InterruptedException {
+    long start = System.nanoTime();
+    long end = start + (long) (seconds * 1e9);
+    ExecutorService workers = AirlineServer.newRequestExecutor();
+    List<Future<Worker>> futures = new ArrayList<Future<Worker>>();
+    for (int c = 0; c < connections; c++) {
+      Worker worker = new Worker(new Random(seed + c), start, end, c);
+      futures.add(workers.submit(() -> {
+        worker.run();
+        return worker;
+      }));
+    }
+
+    Result result = new Result();
+    try {
+      for (Future<Worker> future : futures)
+        result.add(future.get());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      workers.shutdown();
+    }
+    result.elapsed = System.nanoTime() - start;
+    Arrays.sort(result.latencies);
+    return result;
+  }
+
+  // one connection's queries, and what it measured.
+  private final class Worker {
+    private final Random random;
+    private final long start;
+    private final long end;
+    private final long interval; // nanoseconds between queries, 0 for none.
+    private long[] latencies = new long[1024];
+    private int n;
+    private int errors;
+
+    Worker(Random random, long start, long end, int index) {
+      this.random = random;
+      this.interval = (rate > 0) ? (long) (1e9 * connections / rate) : 0;
+      // spread the connections over one interval so that they do not all
+      // send at once.
+      this.start = start + interval * index / connections;
+      this.end = end;
+    }
+
+    void run() throws InterruptedException {
+      long due = start;
+      while (true) {
+        if (interval > 0) {
+          long wait = due - System.nanoTime();
+          if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } else {
+          due = System.nanoTime();
+        }
+        if (due >= end)
+          return;
+
+        URI uri = query();
+        try {
+          HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+              HttpResponse.BodyHandlers.ofString());
+          if (response.statusCode() != 200)
+            errors++;
+        } catch (IOException e) {
+          errors++;
+        }
+        record(System.nanoTime() - due);
+        due += interval;
+      }
+    }
+
+    private URI query() {
+      String from = cities[random.nextInt(origins)];
+      String to = cities[random.nextInt(cities.length)];
+      String q = "from=" + URLEncoder.encode(from, StandardCharsets.UTF_8);
+      if (!endpoint.equals("routes"))
+        q += "&to=" + URLEncoder.encode(to, StandardCharsets.UTF_8);
+      if (endpoint.equals("best"))
+        q += "&metric=distance";
+      return base.resolve("/" + endpoint + "?" + q);
+    }
+
+    private void record(long nanos) {
+      if (n == latencies.length)
+        latencies = Arrays.copyOf(latencies, 2 * n);
+      latencies[n++] = nanos;
+    }
+  }
+
+  /**
+   * The queries answered in one run and their latencies.
+   */
+  public static final class Result {
+    private long[] latencies = new long[0]; // sorted once the run is over.
+    private int errors;
+    private long elapsed;
+
+    private void add(Worker worker) {
+      int n = latencies.length;
+      latencies = Arrays.copyOf(latencies, n + worker.n);
+      System.arraycopy(worker.latencies, 0, latencies, n, worker.n);
+      errors += worker.errors;
+    }
+
+    /**
+     * @return the number of queries answered
+     */
+    public int count() {
+      return latencies.length;
+    }
+
+    /**
+     * @return the number of queries answered with an error or not at all
+     */
+    public int errors() {
+      return errors;
+    }
+
+    /**
+     * @return the queries answered per second
+     */
+    public double throughput() {
+      return latencies.length / (elapsed / 1e9);
+    }
+
+    /**
+     * returns a percentile of the latencies
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the latency in milliseconds
+     */
+    public double percentile(double q) {
+      if (latencies.length == 0)
+        return 0;
+
+      int rank = (int) Math.ceil(q * latencies.length);
+      return latencies[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d queries, %d errors, %.0f queries/s, latency p50=%.2fms"
+          + " p90=%.2fms p99=%.2fms p999=%.2fms max=%.2fms", count(), errors, throughput(),
+          percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999), percentile(1));
+    }
+  }
+
+  private String get(URI uri) throws IOException, InterruptedException {
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200)
+      throw new IOException(uri + " answered " + response.statusCode() + ": " + response.body());
+    return response.body();
+  }
+
+  // the names in the {"cities": [...]} answer of the server.
+  private static String[] cities(String json) {
+    List<String> names = new ArrayList<String>();
+    int i = json.indexOf('[');
+    while (true) {
+      i = json.indexOf('"', i + 1);
+      if (i < 0)
+        break;
+
+      StringBuilder name = new StringBuilder();
+      for (i++; json.charAt(i) != '"'; i++) {
+        char c = json.charAt(i);
+        if (c == '\\') {
+          c = json.charAt(++i);
+          if (c == 'u') {
+            c = (char) Integer.parseInt(json.substring(i + 1, i + 5), 16);
+            i += 4;
+          } else if (c == 'n') {
+            c = '\n';
+          } else if (c == 'r') {
+            c = '\r';
+          } else if (c == 't') {
+            c = '\t';
+          }
+        }
+        name.append(c);
+      }
+      names.add(name.toString());
+    }
+    if (names.isEmpty())
+      throw new IllegalStateException("the server has no cities");
+    return names.toArray(new String[0]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: java AirlineLoadTest url"
+          + " [--endpoint fare|cheapest|best|reachable|routes] [--connections c]"
+          + " [--seconds s] [--warmup s] [--rate queries-per-second] [--origins n]"
+          + " [--seed s]");
+      System.exit(2);
+    }
+
+    String endpoint = "fare";
+    int connections = 64;
+    double seconds = 10;
+    double warmup = 2;
+    double rate = 0;
+    long seed = 1;
+    int origins = 0;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--endpoint":
+          endpoint = value;
+          break;
+        case "--connections":
+          connections = Integer.parseInt(value);
+          break;
+        case "--seconds":
+          seconds = Double.parseDouble(value);
+          break;
+        case "--warmup":
+          warmup = Double.parseDouble(value);
+          break;
+        case "--rate":
+          rate = Double.parseDouble(value);
+          break;
+        case "--seed":
+          seed = Long.parseLong(value);
+          break;
+        case "--origins":
+          origins = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    AirlineLoadTest test = new AirlineLoadTest(URI.create(args[0]), endpoint, connections, rate,
+        origins);
+    System.out.printf("%d cities, /%s, %d connections, %s%n", test.cities.length, endpoint,
+        connections, (rate > 0) ? String.format("%.0f queries/s", rate) : "closed loop");
+    if (warmup > 0)
+      System.out.println("warmup: " + test.run(warmup, ~seed));
+    System.out.println("run:    " + test.run(seconds, seed));
+  }
+}
@@ -0,0 +1,266 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The metrics recorded by one AirlineSystem. Each operation takes a Probe
+ * when it starts and hands it back when it ends; the searches add what they
+ * did to the probe as plain field increments, and only the finished probe
+ * touches the shared histograms and counters. While recording is off every
+ * operation gets the same probe, which does nothing, so the whole cost is one
+ * volatile read per operation.
+ */
+final public class AirlineMetrics implements AirlineMetricsMXBean {
+
+  /**
+   * The operations that are recorded, named after their methods.
+   */
+  enum Op {
+    LOAD_ROUTES("loadRoutes"), SAVE_ROUTES("saveRoutes"),
+    LOAD_SNAPSHOT("loadSnapshot"), SAVE_SNAPSHOT("saveSnapshot"),
+    RETRIEVE_CITY_NAMES("retrieveCityNames"),
+    RETRIEVE_DIRECT_ROUTES_FROM("retrieveDirectRoutesFrom"),
+    RETRIEVE_DIRECT_ROUTE("retrieveDirectRoute"),
+    CHEAPEST_ITINERARY("cheapestItinerary"),
+    CHEAPEST_ITINERARY_VIA("cheapestItineraryVia"),
+    BEST_ITINERARY("bestItinerary"),
+    K_CHEAPEST_ITINERARIES("kCheapestItineraries"),
+    PARETO_ITINERARIES("paretoItineraries"), FARE_TABLE("fareTable"),
+    GET_MSTS("getMSTs"), GET_MSTS_PARALLEL("getMSTsParallel"),
+    IS_REACHABLE("isReachable"), COMPONENT_COUNT("componentCount"),
+    PARTITION("partition"),
+    TRIPS_WITHIN_CITY("tripsWithinCity"), TRIPS_WITHIN("tripsWithin"),
+    DELETE_ROUTE("deleteRoute"), DELETE_CITY("deleteCity"), ADD_CITY("addCity"),
+    ADD_ROUTE("addRoute"), COMMIT_BATCH("commitBatch");
+
+    private final String name;
+
+    Op(String name) {
+      this.name = name;
+    }
+  }
+
+  private static final String[] COUNTERS = { "verticesSettled", "edgesRelaxed",
+      "heapOperations", "tripsEmitted", "pathsReconstructed", "truncated" };
+  private static final Op[] OPS = Op.values();
+
+  private volatile boolean enabled = Boolean.getBoolean("airline.metrics");
+  private final Histogram[] latencies = new Histogram[OPS.length];
+  private final LongAdder[] counters = new LongAdder[OPS.length * COUNTERS.length];
+
+  AirlineMetrics() {
+    for (int i = 0; i < latencies.length; i++)
+      latencies[i] = new Histogram();
+    for (int i = 0; i < counters.length; i++)
+      counters[i] = new LongAdder();
+  }
+
+  /**
+   * registers these metrics with the platform MBean server as
+   * airline:type=AirlineSystem,name=name
+   *
+   * @param name the String name of the Airline system
+   * @return the ObjectName registered
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("airline:type=AirlineSystem,name="
+        + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Map<String, Latency> getLatencies() {
+    Map<String, Latency> map = new LinkedHashMap<String, Latency>();
+    for (Op op : OPS) {
+      Latency latency = latencies[op.ordinal()].latency();
+      if (latency.getCount() > 0)
+        map.put(op.name, latency);
+    }
+    return map;
+  }
+
+  public Map<String, Long> getCounters() {
+    Map<String, Long> map = new LinkedHashMap<String, Long>();
+    for (Op op : OPS) {
+      for (int k = 0; k < COUNTERS.length; k++) {
+        long sum = counters[op.ordinal() * COUNTERS.length + k].sum();
+        if (sum != 0)
+          map.put(op.name + "." + COUNTERS[k], sum);
+      }
+    }
+    return map;
+  }
+
+  public void reset() {
+    for (Histogram histogram : latencies)
+      histogram.reset();
+    for (LongAdder counter : counters)
+      counter.reset();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    for (Map.Entry<String, Latency> e : getLatencies().entrySet())
+      s.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+    for (Map.Entry<String, Long> e : getCounters().entrySet())
+      s.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+    return s.toString();
+  }
+
+  // returns the probe for one run of an operation.
+  Probe start(Op op) {
+    return enabled ? new Probe(this, op) : Probe.OFF;
+  }
+
+  /*
+   * What one run of an operation did, collected without synchronization by
+   * the thread running it.
+   */
+  static class Probe {
+    private static final Probe OFF = new Probe(null, null) {
+      @Override
+      void searched(long settled, long relaxed, long heapOperations) {
+      }
+
+      @Override
+      void trips(long n) {
+      }
+
+      @Override
+      void paths(long n) {
+      }
+
+      @Override
+      void truncated() {
+      }
+
+      @Override
+      void done() {
+      }
+    };
+
+    private final AirlineMetrics metrics;
+    private final Op op;
+    private final long start;
+    private final long[] counts = new long[COUNTERS.length];
+
+    private Probe(AirlineMetrics metrics, Op op) {
+      this.metrics = metrics;
+      this.op = op;
+      this.start = (op == null) ? 0 : System.nanoTime();
+    }
+
+    void searched(long settled, long relaxed, long heapOperations) {
+      counts[0] += settled;
+      counts[1] += relaxed;
+      counts[2] += heapOperations;
+    }
+
+    void trips(long n) {
+      counts[3] += n;
+    }
+
+    void paths(long n) {
+      counts[4] += n;
+    }
+
+    // marks the run as stopped at its limits.
+    void truncated() {
+      counts[5]++;
+    }
+
+    // records the latency and the counts of the run.
+    void done() {
+      metrics.latencies[op.ordinal()].record(System.nanoTime() - start);
+      for (int k = 0; k < counts.length; k++)
+        if (counts[k] != 0)
+          metrics.counters[op.ordinal() * COUNTERS.length + k].add(counts[k]);
+    }
+  }
+
+  /*
+   * A histogram of latencies in nanoseconds with 8 buckets per power of two,
+   * so that every value is counted in a bucket less than 12.5% wide.
+   * Recording is one atomic increment and needs no lock.
+   */
+  private static class Histogram {
+    private static final int SUB_BUCKETS = 8;
+    private final AtomicLongArray buckets = new AtomicLongArray(62 * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      nanos = Math.max(0, nanos);
+      buckets.incrementAndGet(bucket(nanos));
+      total.add(nanos);
+      max.accumulate(nanos);
+    }
+
+    // values below 8 have a bucket each; above, a power of two 2^e is split
+    // into 8 buckets by the 3 bits after its leading one.
+    private static int bucket(long nanos) {
+      if (nanos < SUB_BUCKETS)
+        return (int) nanos;
+
+      int e = 63 - Long.numberOfLeadingZeros(nanos);
+      return (e - 2) * SUB_BUCKETS + (int) ((nanos >>> (e - 3)) & (SUB_BUCKETS - 1));
+    }
+
+    // the largest value counted in bucket b.
+    private static long highest(int b) {
+      if (b < SUB_BUCKETS)
+        return b;
+
+      int e = b / SUB_BUCKETS + 2;
+      return ((long) (SUB_BUCKETS + b % SUB_BUCKETS + 1) << (e - 3)) - 1;
+    }
+
+    void reset() {
+      for (int b = 0; b < buckets.length(); b++)
+        buckets.set(b, 0);
+      total.reset();
+      max.reset();
+    }
+
+    Latency latency() {
+      long[] counts = new long[buckets.length()];
+      long n = 0;
+      for (int b = 0; b < counts.length; b++)
+        n += counts[b] = buckets.get(b);
+      if (n == 0)
+        return new Latency(0, 0, 0, 0, 0, 0, 0);
+
+      long maxNanos = max.get();
+      return new Latency(n, total.sum() / 1e3 / n, percentile(counts, n, 0.5, maxNanos),
+          percentile(counts, n, 0.9, maxNanos), percentile(counts, n, 0.99, maxNanos),
+          percentile(counts, n, 0.999, maxNanos), maxNanos / 1e3);
+    }
+
+    // the highest value of the bucket holding the q-th quantile, in
+    // microseconds, but no more than the largest value recorded.
+    private static double percentile(long[] counts, long n, double q, long maxNanos) {
+      long rank = (long) Math.ceil(q * n);
+      long seen = 0;
+      for (int b = 0; b < counts.length; b++) {
+        seen += counts[b];
+        if (seen >= rank)
+          return Math.min(highest(b), maxNanos) / 1e3;
+      }
+      return maxNanos / 1e3;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+import java.util.Map;
+
+/**
+ * The metrics of an AirlineSystem: a latency histogram per operation and the
+ * work its searches did, readable from code through AirlineSystem.metrics()
+ * or over JMX once registered. Recording is off until enabled, or until the
+ * system property airline.metrics is set to true.
+ */
+public interface AirlineMetricsMXBean {
+
+  /**
+   * @return true if operations are being recorded
+   */
+  boolean isEnabled();
+
+  /**
+   * starts or stops recording; what was recorded so far is kept
+   *
+   * @param enabled true to record operations
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * returns the latencies of each operation called at least once
+   *
+   * @return a Map<String, Latency> from operation name to its latencies
+   */
+  Map<String, Latency> getLatencies();
+
+  /**
+   * returns the work done by each operation: "verticesSettled",
+   * "edgesRelaxed", "heapOperations", "tripsEmitted" and "pathsReconstructed"
+   * totals, and the number of runs "truncated" by their limits, keyed as
+   * operation.counter
+   *
+   * @return a Map<String, Long> of the counters that are not zero
+   */
+  Map<String, Long> getCounters();
+
+  /**
+   * forgets everything recorded so far
+   */
+  void reset();
+
+  /**
+   * The latencies of one operation, in microseconds. Percentiles are read
+   * off a histogram whose buckets are within 12.5% of each other.
+   */
+  public static final class Latency {
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    public Latency(long count, double mean, double p50, double p90, double p99,
+        double p999, double max) {
+      this.count = count;
+      this.mean = mean;
+      this.p50 = p50;
+      this.p90 = p90;
+      this.p99 = p99;
+      this.p999 = p999;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public double getP50() {
+      return p50;
+    }
+
+    public double getP90() {
+      return p90;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    public double getP999() {
+      return p999;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus"
+          + " p999=%.1fus max=%.1fus", count, mean, p50, p90, p99, p999, max);
+    }
+  }
+}
@@ -0,0 +1,754 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local HTTP server answering the queries of an AirlineSystem as JSON. Each
+ * request runs on a thread of its own, a virtual thread where the runtime has
+ * them, and reads the schedule through the same lock-free path as any other
+ * caller, so queries never wait for each other or for a writer. The schedule
+ * is read-only over HTTP; changes are made through the AirlineSystem itself.
+ *
+ * All endpoints take GET requests with their arguments as query parameters:
+ * <ul>
+ * <li>/cities: the names of all cities;</li>
+ * <li>/routes?from=A[&amp;to=B]: the non-stop routes out of A, or the one to
+ * B;</li>
+ * <li>/cheapest?from=A&amp;to=B[&amp;via=C]: the cheapest itineraries;</li>
+ * <li>/best?from=A&amp;to=B&amp;metric=price|distance|legs: the best
+ * itineraries under a metric;</li>
+ * <li>/k-cheapest?from=A&amp;to=B&amp;k=n: the n cheapest itineraries;</li>
+ * <li>/pareto?from=A&amp;to=B: the price, distance and legs trade-offs;</li>
+ * <li>/fare?from=A&amp;to=B: the cheapest fare of one pair;</li>
+ * <li>/fares?from=A,B&amp;to=C,D: the cheapest fares of every pair;</li>
+ * <li>/reachable?from=A&amp;to=B: whether any itinerary connects A and B;</li>
+ * <li>/trips?budget=x[&amp;from=A]: all trips within a budget;</li>
+ * <li>/msts: the minimum spanning trees;</li>
+ * <li>/metrics: the latencies and counters of the AirlineSystem.</li>
+ * </ul>
+ * Fares are in dollars; a fare between cities that no itinerary connects is
+ * null. An unknown city is answered with 404, a missing or malformed
+ * parameter with 400.
+ *
+ * The searches behind /cheapest (with or without via), /best, /k-cheapest,
+ * /pareto, /trips, /fare and /fares run under limits: a timeout in
+ * milliseconds, the server's own unless the request gives one as
+ * timeout=ms, and at most limit=n results. Their answers carry "truncated",
+ * false or the limit the search stopped at, with what was found before it;
+ * a fare not found in time is null.
+ *
+ * Single fare lookups are batched: a lookup joins a queue, and one thread
+ * takes everything queued at once, runs one search per distinct source for
+ * all of the destinations asked of it, and hands each lookup its fare. An
+ * idle server answers a lookup straight away; under load, the lookups that
+ * arrive while a batch runs share the searches of the next one.
+ *
+ * The server listens on the loopback address unless given another, with
+ * --bind on the command line.
+ *
+ * The JDK server writes the headers and the body of a response apart; with
+ * Nagle's algorithm the body then waits out the client's delayed ACK, some
+ * 40ms, on every request of a kept-alive connection. main() turns Nagle's
+ * algorithm off for the whole JVM, unless -Dsun.net.httpserver.nodelay says
+ * otherwise; a program that embeds the server should run with
+ * -Dsun.net.httpserver.nodelay=true.
+ *
+ * Usage: java AirlineServer routes-file [--port p] [--bind address] [--snapshot]
+ * [--off-heap] [--max-batch n] [--timeout ms]
+ */
+final public class AirlineServer {
+
+  private final AirlineSystem airline;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final FareBatcher fares;
+  private final long timeout; // milliseconds a limited search may run, 0 for no limit.
+
+  /**
+   * creates a server reachable from this machine only
+   *
+   * @param airline the AirlineSystem to serve
+   * @param port    the port to listen on, or 0 for any free port
+   */
+  public AirlineServer(AirlineSystem airline, int port) throws IOException {
+    this(airline, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024, 10000);
+  }
+
+  /**
+   * @param airline  the AirlineSystem to serve
+   * @param address  the address to listen on; one other than the loopback
+   *                 address makes the server reachable from other machines
+   * @param maxBatch the most fare lookups answered by one batch
+   * @param timeout  the milliseconds a search may run unless the request
+   *                 says otherwise, or 0 for no limit
+   */
+  public AirlineServer(AirlineSystem airline, InetSocketAddress address, int maxBatch,
+      long timeout) throws IOException {
+    if (maxBatch < 1)
+      throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+    if (timeout < 0)
+      throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+
+    this.airline = airline;
+    this.timeout = timeout;
+    this.server = HttpServer.create(address, 1024);
+    this.executor = newRequestExecutor();
+    this.fares = new FareBatcher(maxBatch);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  /**
+   * starts accepting requests
+   */
+  public void start() {
+    fares.thread.start();
+    server.start();
+  }
+
+  /**
+   * stops accepting requests and waits up to a given time for the requests
+   * in flight to finish
+   *
+   * @param seconds the most seconds to wait
+   */
+  public void stop(int seconds) {
+    server.stop(seconds);
+    fares.thread.interrupt();
+    executor.shutdown();
+  }
+
+  /**
+   * @return the port the server listens on
+   */
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * @return true if requests run on virtual threads
+   */
+  public static boolean virtualThreads() {
+    return VIRTUAL_THREADS != null;
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor, looked up so that the server
+  // still builds and runs on Java 17, or null where it does not exist.
+  private static final Method VIRTUAL_THREADS = virtualThreadMethod();
+
+  private static Method virtualThreadMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  // a new virtual thread per request where the runtime has them; otherwise a
+  // pool of daemon threads that grows with the requests in flight.
+  static ExecutorService newRequestExecutor() {
+    if (VIRTUAL_THREADS != null) {
+      try {
+        return (ExecutorService) VIRTUAL_THREADS.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // fall through to platform threads.
+      }
+    }
+    return Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "airline-request");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    int status = 200;
+    String body;
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        throw new BadRequest(405, "only GET is supported");
+      }
+      body = answer(exchange.getRequestURI().getPath(),
+          parameters(exchange.getRequestURI().getRawQuery()));
+    } catch (BadRequest e) {
+      status = e.status;
+      body = error(e.getMessage());
+    } catch (CityNotFoundException e) {
+      status = 404;
+      body = error("city not found: " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      status = 400;
+      body = error(e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      status = 503;
+      body = error("server is stopping");
+    } catch (RuntimeException e) {
+      status = 500;
+      body = error(e.toString());
+    }
+
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private String answer(String path, Map<String, String> p)
+      throws BadRequest, CityNotFoundException, InterruptedException {
+    Json json = new Json();
+    switch (path) {
+      case "/cities":
+        json.open("cities").strings(airline.retrieveCityNames());
+        break;
+      case "/routes":
+        if (p.containsKey("to")) {
+          Route route = airline.retrieveDirectRoute(required(p, "from"), p.get("to"));
+          json.open("route");
+          if (route == null)
+            json.nothing();
+          else
+            json.route(route);
+        } else {
+          json.open("routes").routes(airline.retrieveDirectRoutesFrom(required(p, "from")));
+        }
+        break;
+      case "/cheapest": {
+        String from = required(p, "from");
+        String to = required(p, "to");
+        AirlineSystem.Limited<Set<ArrayList<Route>>> itineraries = p.containsKey("via")
+            ? airline.cheapestItinerary(from, p.get("via"), to, limits(p))
+            : airline.cheapestItinerary(from, to, limits(p));
+        json.open("itineraries").itineraries(itineraries.result()).truncation(itineraries);
+        break;
+      }
+      case "/best": {
+        AirlineSystem.Limited<Set<ArrayList<Route>>> itineraries = airline.bestItinerary(
+            required(p, "from"), required(p, "to"), metric(required(p, "metric")), limits(p));
+        json.open("itineraries").itineraries(itineraries.result()).truncation(itineraries);
+        break;
+      }
+      case "/k-cheapest": {
+        AirlineSystem.Limited<List<ArrayList<Route>>> itineraries = airline.kCheapestItineraries(
+            required(p, "from"), required(p, "to"), (int) number(p, "k"), limits(p));
+        json.open("itineraries").itineraries(itineraries.result()).truncation(itineraries);
+        break;
+      }
+      case "/pareto": {
+        AirlineSystem.Limited<List<ArrayList<Route>>> itineraries = airline.paretoItineraries(
+            required(p, "from"), required(p, "to"), limits(p));
+        json.open("itineraries").itineraries(itineraries.result()).truncation(itineraries);
+        break;
+      }
+      case "/fare": {
+        FareLookup lookup = fares.lookUp(required(p, "from"), required(p, "to"), timeout(p));
+        json.open("fare").fare(lookup.fare()).truncation(lookup.table);
+        break;
+      }
+      case "/fares": {
+        AirlineSystem.Limited<AirlineSystem.FareTable> limited = airline.fareTable(
+            list(required(p, "from")), list(required(p, "to")), false, limits(p));
+        AirlineSystem.FareTable table = limited.result();
+        json.open("sources").strings(table.sources());
+        json.open("destinations").strings(table.destinations());
+        json.open("fares").begin('[');
+        for (int i = 0; i < table.sources().size(); i++) {
+          json.begin('[');
+          for (int j = 0; j < table.destinations().size(); j++)
+            json.fare(table.fare(i, j));
+          json.end(']');
+        }
+        json.end(']').truncation(limited);
+        break;
+      }
+      case "/reachable":
+        json.open("reachable").value(airline.isReachable(required(p, "from"), required(p, "to")));
+        break;
+      case "/trips": {
+        double budget = number(p, "budget");
+        AirlineSystem.Limited<Set<ArrayList<Route>>> trips = p.containsKey("from")
+            ? airline.tripsWithin(p.get("from"), budget, limits(p))
+            : airline.tripsWithin(budget, limits(p));
+        json.open("trips").itineraries(trips.result()).truncation(trips);
+        break;
+      }
+      case "/msts":
+        json.open("trees").begin('[');
+        for (Set<Route> tree : airline.getMSTs())
+          json.routes(tree);
+        json.end(']');
+        break;
+      case "/metrics":
+        metrics(json, airline.metrics());
+        break;
+      default:
+        throw new BadRequest(404, "no such endpoint: " + path);
+    }
+    return json.close();
+  }
+
+  private static void metrics(Json json, AirlineMetrics metrics) {
+    json.open("enabled").value(metrics.isEnabled());
+    json.open("latencies").begin('{');
+    for (Map.Entry<String, AirlineMetricsMXBean.Latency> e : metrics.getLatencies().entrySet()) {
+      AirlineMetricsMXBean.Latency l = e.getValue();
+      json.open(e.getKey()).begin('{');
+      json.open("count").value(l.getCount());
+      json.open("meanMicros").value(l.getMean());
+      json.open("p50Micros").value(l.getP50());
+      json.open("p90Micros").value(l.getP90());
+      json.open("p99Micros").value(l.getP99());
+      json.open("p999Micros").value(l.getP999());
+      json.open("maxMicros").value(l.getMax());
+      json.end('}');
+    }
+    json.end('}');
+    json.open("counters").begin('{');
+    for (Map.Entry<String, Long> e : metrics.getCounters().entrySet())
+      json.open(e.getKey()).value(e.getValue());
+    json.end('}');
+  }
+
+  private static Map<String, String> parameters(String query) {
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    if (query == null || query.isEmpty())
+      return map;
+
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      String key = (eq < 0) ? pair : pair.substring(0, eq);
+      String value = (eq < 0) ? "" : pair.substring(eq + 1);
+      map.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return map;
+  }
+
+  private static String required(Map<String, String> p, String name) throws BadRequest {
+    String value = p.get(name);
+    if (value == null || value.isEmpty())
+      throw new BadRequest(400, "missing parameter " + name);
+    return value;
+  }
+
+  private static double number(Map<String, String> p, String name) throws BadRequest {
+    String value = required(p, name);
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new BadRequest(400, "parameter " + name + " is not a number: " + value);
+    }
+  }
+
+  // the limits of a search: the timeout of the request or the server, and
+  // the most results the request asks for.
+  private AirlineSystem.Limits limits(Map<String, String> p) throws BadRequest {
+    AirlineSystem.Limits limits = new AirlineSystem.Limits();
+    long millis = timeout(p);
+    if (millis > 0)
+      limits.timeout(millis, TimeUnit.MILLISECONDS);
+    if (p.containsKey("limit"))
+      limits.maxResults((int) number(p, "limit"));
+    return limits;
+  }
+
+  // the milliseconds a search may run, the request's or the server's, 0 for
+  // no limit.
+  private long timeout(Map<String, String> p) throws BadRequest {
+    return p.containsKey("timeout") ? (long) number(p, "timeout") : timeout;
+  }
+
+  private static AirlineSystem.Metric metric(String name) throws BadRequest {
+    try {
+      return AirlineSystem.Metric.valueOf(name.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new BadRequest(400, "metric must be price, distance or legs: " + name);
+    }
+  }
+
+  private static List<String> list(String names) {
+    List<String> list = new ArrayList<String>();
+    for (String name : names.split(","))
+      if (!name.isEmpty())
+        list.add(name);
+    return list;
+  }
+
+  private static String error(String message) {
+    Json json = new Json();
+    json.open("error").value(message);
+    return json.close();
+  }
+
+  // a response other than 200, with the message to send back.
+  private static class BadRequest extends Exception {
+    private static final long serialVersionUID = 1L;
+    final int status;
+
+    BadRequest(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  /*
+   * Collects single fare lookups and answers them a batch at a time from one
+   * thread. The thread takes what is queued without waiting for more, so a
+   * batch is whatever arrived while the last one ran; lookups of the same
+   * source share one search that stops once all of their destinations are
+   * settled.
+   */
+  private final class FareBatcher implements Runnable {
+    private final BlockingQueue<FareLookup> queue = new LinkedBlockingQueue<FareLookup>();
+    private final int maxBatch;
+    private final Thread thread;
+
+    FareBatcher(int maxBatch) {
+      this.maxBatch = maxBatch;
+      this.thread = new Thread(this, "airline-fare-batcher");
+      thread.setDaemon(true);
+    }
+
+    // queues a lookup and waits for its batch to answer it.
+    FareLookup lookUp(String source, String destination, long timeout)
+        throws CityNotFoundException, InterruptedException {
+      FareLookup lookup = new FareLookup(source, destination, timeout);
+      queue.add(lookup);
+      try {
+        lookup.answered.get();
+        return lookup;
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof CityNotFoundException)
+          throw (CityNotFoundException) e.getCause();
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    public void run() {
+      List<FareLookup> batch = new ArrayList<FareLookup>();
+      try {
+        while (true) {
+          batch.add(queue.take());
+          queue.drainTo(batch, maxBatch - 1);
+          answer(batch);
+          batch.clear();
+        }
+      } catch (InterruptedException e) {
+        // stopped: fail whatever is left rather than leave it waiting.
+        batch.addAll(queue);
+        for (FareLookup lookup : batch)
+          lookup.answered.completeExceptionally(new IllegalStateException("server stopped"));
+      }
+    }
+
+    private void answer(List<FareLookup> batch) {
+      Map<String, List<FareLookup>> bySource = new LinkedHashMap<String, List<FareLookup>>();
+      for (FareLookup lookup : batch)
+        bySource.computeIfAbsent(lookup.source, s -> new ArrayList<FareLookup>()).add(lookup);
+
+      // fareTable runs its sources in parallel, but a table of all of them
+      // would search every source for every destination in the batch.
+      bySource.values().parallelStream().forEach(this::answerSource);
+    }
+
+    // answers the lookups out of one source with one search, which runs as
+    // long as the most patient of them may wait.
+    private void answerSource(List<FareLookup> lookups) {
+      // the table keeps the distinct destinations in the order given, so
+      // each lookup's column is known while they are listed.
+      Map<String, Integer> columns = new LinkedHashMap<String, Integer>();
+      boolean unlimited = false;
+      long millis = 0;
+      for (FareLookup lookup : lookups) {
+        columns.putIfAbsent(lookup.destination, columns.size());
+        lookup.column = columns.get(lookup.destination);
+        unlimited |= lookup.timeout == 0;
+        millis = Math.max(millis, lookup.timeout);
+      }
+
+      AirlineSystem.Limits limits = new AirlineSystem.Limits();
+      if (!unlimited)
+        limits.timeout(millis, TimeUnit.MILLISECONDS);
+      try {
+        AirlineSystem.Limited<AirlineSystem.FareTable> table = airline.fareTable(
+            Collections.singletonList(lookups.get(0).source), columns.keySet(), false, limits);
+        for (FareLookup lookup : lookups) {
+          lookup.table = table;
+          lookup.answered.complete(null);
+        }
+      } catch (CityNotFoundException e) {
+        // one unknown city fails the whole table; answer the lookups apart.
+        if (lookups.size() == 1) {
+          lookups.get(0).answered.completeExceptionally(e);
+          return;
+        }
+        for (FareLookup lookup : lookups)
+          answerSource(Collections.singletonList(lookup));
+      } catch (RuntimeException e) {
+        for (FareLookup lookup : lookups)
+          lookup.answered.completeExceptionally(e);
+      }
+    }
+  }
+
+  // one fare lookup; the batcher sets its table and column before it
+  // completes answered.
+  private static final class FareLookup {
+    final String source;
+    final String destination;
+    final long timeout; // milliseconds the lookup may wait, 0 for no limit.
+    final CompletableFuture<Void> answered = new CompletableFuture<Void>();
+    AirlineSystem.Limited<AirlineSystem.FareTable> table;
+    int column;
+
+    FareLookup(String source, String destination, long timeout) {
+      this.source = source;
+      this.destination = destination;
+      this.timeout = timeout;
+    }
+
+    double fare() {
+      return table.result().fare(0, column);
+    }
+  }
+
+  /*
+   * Writes one JSON object, member by member. Nothing is buffered but the
+   * text itself, and commas are placed by remembering whether the innermost
+   * object or array is still empty.
+   */
+  private static final class Json {
+    private final StringBuilder s = new StringBuilder("{");
+    private boolean first = true;
+
+    // starts the member name of the outermost or current object.
+    Json open(String name) {
+      comma();
+      string(name);
+      s.append(':');
+      first = true; // the value follows with no comma.
+      return this;
+    }
+
+    Json begin(char bracket) {
+      comma();
+      s.append(bracket);
+      first = true;
+      return this;
+    }
+
+    Json end(char bracket) {
+      s.append(bracket);
+      first = false;
+      return this;
+    }
+
+    String close() {
+      return s.append('}').toString();
+    }
+
+    Json value(String value) {
+      comma();
+      string(value);
+      return this;
+    }
+
+    Json value(boolean value) {
+      comma();
+      s.append(value);
+      return this;
+    }
+
+    Json value(double value) {
+      comma();
+      if (Double.isFinite(value))
+        s.append(value == (long) value ? Long.toString((long) value) : Double.toString(value));
+      else
+        s.append("null");
+      return this;
+    }
+
+    Json nothing() {
+      comma();
+      s.append("null");
+      return this;
+    }
+
+    // a fare in dollars, rounded to the cent, or null when unreachable.
+    Json fare(double dollars) {
+      return value(Double.isInfinite(dollars) ? dollars : Math.round(dollars * 100) / 100.0);
+    }
+
+    Json strings(Collection<String> values) {
+      begin('[');
+      for (String value : values)
+        value(value);
+      return end(']');
+    }
+
+    Json route(Route route) {
+      begin('{');
+      open("from").value(route.source);
+      open("to").value(route.destination);
+      open("distance").value(route.distance);
+      open("price").value(route.price);
+      return end('}');
+    }
+
+    Json routes(Collection<Route> routes) {
+      begin('[');
+      for (Route route : routes)
+        route(route);
+      return end(']');
+    }
+
+    // each itinerary with its totals, as {"price", "distance", "legs"}.
+    Json itineraries(Collection<? extends List<Route>> itineraries) {
+      begin('[');
+      if (itineraries != null) {
+        for (List<Route> legs : itineraries) {
+          long cents = 0;
+          long distance = 0;
+          for (Route route : legs) {
+            cents += route.cents;
+            distance += route.distance;
+          }
+          begin('{');
+          open("price").value(cents / 100.0);
+          open("distance").value(distance);
+          open("legs").routes(legs);
+          end('}');
+        }
+      }
+      return end(']');
+    }
+
+    // the limit a search stopped at, as "truncated": false or its name.
+    Json truncation(AirlineSystem.Limited<?> limited) {
+      open("truncated");
+      if (limited.truncated())
+        return value(limited.truncation().name().toLowerCase());
+      return value(false);
+    }
+
+    private void comma() {
+      if (!first)
+        s.append(',');
+      first = false;
+    }
+
+    private void string(String value) {
+      s.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '"':
+            s.append("\\\"");
+            break;
+          case '\\':
+            s.append("\\\\");
+            break;
+          case '\n':
+            s.append("\\n");
+            break;
+          case '\r':
+            s.append("\\r");
+            break;
+          case '\t':
+            s.append("\\t");
+            break;
+          default:
+            if (c < 0x20)
+              s.append(String.format("\\u%04x", (int) c));
+            else
+              s.append(c);
+        }
+      }
+      s.append('"');
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: java AirlineServer routes-file [--port p] [--bind address]"
+          + " [--snapshot] [--off-heap] [--max-batch n] [--timeout ms]");
+      System.exit(2);
+    }
+
+    int port = 8080;
+    String bind = null; // the loopback address.
+    boolean snapshot = false;
+    boolean offHeap = false;
+    int maxBatch = 1024;
+    long timeout = 10000;
+    for (int i = 1; i < args.length; i++) {
+      switch (args[i]) {
+        case "--port":
+          port = Integer.parseInt(args[++i]);
+          break;
+        case "--bind":
+          bind = args[++i];
+          break;
+        case "--snapshot":
+          snapshot = true;
+          break;
+        case "--off-heap":
+          offHeap = true;
+          break;
+        case "--max-batch":
+          maxBatch = Integer.parseInt(args[++i]);
+          break;
+        case "--timeout":
+          timeout = Long.parseLong(args[++i]);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+
+    AirlineSystem airline = new AirlineSystem(offHeap);
+    long start = System.nanoTime();
+    if (!(snapshot ? airline.loadSnapshot(args[0]) : airline.loadRoutes(args[0]))) {
+      System.err.println("cannot read " + args[0]);
+      System.exit(1);
+    }
+    System.out.printf("loaded %d cities in %d ms%n", airline.retrieveCityNames().size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    InetAddress address = (bind == null) ? InetAddress.getLoopbackAddress()
+        : InetAddress.getByName(bind);
+    AirlineServer server = new AirlineServer(airline, new InetSocketAddress(address, port),
+        maxBatch, timeout);
+    server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+    System.out.printf("listening on http://%s:%d/ (%s threads)%n",
+        (bind == null) ? "localhost" : bind, server.port(),
+        virtualThreads() ? "virtual" : "platform");
+  }
+}
@@ -1,723 +1,4573 @@
-import java.util.*;
-
-import java.io.*;
-
-final public class AirlineSystem implements AirlineInterface {
-	private static ArrayList<String> cities;
-	private int numOfCities;
-	private Digraph G;
-	private ArrayList<Route> routes;
-
-	/**
-	 * reads the city names and the routes from a file
-	 * 
-	 * @param fileName the String file name
-	 * @return true if routes loaded successfully and false otherwise
-	 */
-	public boolean loadRoutes(String fileName) {
-		try {
-			// Open txt file for scanning
-			Scanner fileScan = new Scanner(new FileInputStream(fileName));
-
-			// Get the number of cities (first line in txt file).
-			numOfCities = fileScan.nextInt();
-			cities = new ArrayList<>(numOfCities);
-			G = new Digraph(numOfCities); // new graph object
-
-			String cityName;
-
-			// Read city names into set
-			for (int i = 0; i < numOfCities; i++) {
-				cityName = fileScan.next();
-				cities.add(cityName);
-			}
-
-			int source;
-			int destination;
-			int distance;
-			double price;
-
-			// Read the direct routes and their wieghts
-			while (fileScan.hasNext()) {
-				source = fileScan.nextInt() - 1; // get the source
-				destination = fileScan.nextInt() - 1; // get the destination
-				distance = fileScan.nextInt(); // get the distance
-				price = fileScan.nextDouble(); // get the price
-
-				// add routes to the graph
-				G.addEdge(new Route(cities.get(source), cities.get(destination), distance, price));
-				G.addEdge(new Route(cities.get(destination), cities.get(source), distance, price));
-			}
-
-			// close file
-			fileScan.close();
-		}
-
-		// Return false if no such file is found
-		catch (IOException e) {
-			return false;
-		}
-
-		return true;
-	}
-
-	/**
-	 * writes the city names and the routes into a file
-	 * 
-	 * @param fileName the String file name
-	 * @return true if routes saved successfully and false otherwise
-	 */
-	public boolean saveRoutes(String fileName) {
-		// create a File object to write to the file.
-		try {
-			FileWriter writer = new FileWriter(fileName);
-
-			for (String city : cities) {
-				writer.write(city);
-			}
-
-			for (Route route : routes) {
-				writer.write(route.toString());
-			}
-
-			writer.close();
-			return true;
-		} catch (IOException e) {
-			return false;
-		}
-	}
-
-	/**
-	 * returns the set of city names in the Airline system
-	 * 
-	 * @return a (possibly empty) Set<String> of city names
-	 */
-	public Set<String> retrieveCityNames() {
-		if (cities.isEmpty())
-			return null;
-
-		Set<String> cityNames = new LinkedHashSet<String>();
-
-		// Return the city names in order
-		for (String city : cities)
-			cityNames.add(city);
-
-		// Return the set of city names
-		return cityNames;
-	}
-
-	/**
-	 * returns the set of direct routes out of a given city
-	 * 
-	 * @param city the String city name
-	 * @return a (possibly empty) Set<Route> of Route objects representing the
-	 *         direct routes out of city
-	 * @throws CityNotFoundException if the city is not found in the Airline
-	 *                               system
-	 */
-	public Set<Route> retrieveDirectRoutesFrom(String city)
-			throws CityNotFoundException {
-		if (!cities.contains(city))
-			throw new CityNotFoundException(city);
-
-		// Get the index of city from HashSet
-		int i = cities.indexOf(city);
-
-		// Get the index of the city
-		// Create an empty set of direct routes
-		Set<Route> directRoutes = new HashSet<Route>();
-
-		// For each route r of city i
-		// add r to set of direct routes
-		for (Route r : G.adj(i))
-			directRoutes.add(r);
-
-		// Return the set of direct routes
-		return directRoutes;
-	}
-
-	/**
-	 * finds cheapest path(s) between two cities
-	 * 
-	 * @param source      the String source city name
-	 * @param destination the String destination city name
-	 * @return a (possibly empty) Set<ArrayList<Route>> of cheapest
-	 *         paths. Each path is an ArrayList<Route> of Route objects that
-	 *         includes a
-	 *         Route out of the source and a Route into the destination.
-	 * @throws CityNotFoundException if any of the two cities are not found in the
-	 *                               Airline system
-	 */
-	public Set<ArrayList<Route>> cheapestItinerary(String source,
-			String destination) throws CityNotFoundException {
-		if (source.equals(destination))
-			return null;
-
-		int s = cities.indexOf(source);
-		int d = cities.indexOf(destination);
-
-		// check if any of the cities are not found in Airline system.
-		if ((!cities.contains(source) || (!cities.contains(destination))))
-			throw new CityNotFoundException(source);
-
-		Set<ArrayList<Route>> shortestDistanceSet = new LinkedHashSet<ArrayList<Route>>();
-
-		G.dijkstras(s);
-		if (G.marked[d]) {
-			ArrayList<Route> shortestDistPath = new ArrayList<Route>();
-			Stack<Integer> path = new Stack<>();
-
-			for (int x = d; x != s; x = G.edgeTo[x]) {
-				path.push(x);
-
-				if (G.edgeTo[x] == s) {
-					path.push(s);
-					break;
-				}
-			}
-
-			int prevVertex = s;
-
-			while (!path.isEmpty()) {
-				int v = path.pop();
-
-				Iterable<Route> children = G.adj(prevVertex);
-
-				for (Route r : children) {
-					int to = cities.indexOf(r.destination);
-					if (to == v) {
-						shortestDistPath.add(r);
-						prevVertex = to;
-						break;
-					}
-				}
-			}
-			shortestDistanceSet.add(shortestDistPath);
-		}
-		return shortestDistanceSet;
-
-	}
-
-	/**
-	 * finds cheapest path(s) between two cities going through a third city
-	 * 
-	 * @param source      the String source city name
-	 * @param transit     the String transit city name
-	 * @param destination the String destination city name
-	 * @return a (possibly empty) Set<ArrayList<Route>> of cheapest
-	 *         paths. Each path is an ArrayList<Route> of city names that includes
-	 *         a Route out of source, into and out of transit, and into destination.
-	 * @throws CityNotFoundException if any of the three cities are not found in
-	 *                               the Airline system
-	 */
-	public Set<ArrayList<Route>> cheapestItinerary(String source,
-			String transit, String destination) throws CityNotFoundException {
-		// check if any of the cities are not found in Airline system.
-		if ((!cities.contains(source) || (!cities.contains(destination))) || (!cities.contains(transit)))
-			throw new CityNotFoundException(source);
-
-		int s = cities.indexOf(source);
-		int d = cities.indexOf(destination);
-		int t = cities.indexOf(transit);
-
-		Set<ArrayList<Route>> cheapestPathSet = new LinkedHashSet<ArrayList<Route>>();
-
-		G.dijkstras(s);
-		if (G.marked[t]) {
-			G.dijkstras(t); // check if shortest distance from source to destination exists.
-			if (!G.marked[d])
-				return cheapestPathSet;
-
-			ArrayList<Route> cheapestPath = new ArrayList<Route>();
-			Stack<Integer> path = new Stack<>();
-			// G.dijkstras(t);
-
-			for (int x = d; x != s; x = G.edgeTo[x]) {
-				path.push(x);
-
-				if (G.edgeTo[x] == t) // check if transit has been reached.
-				{
-					path.push(t); // push the transit vertex onto stack if so.
-					G.dijkstras(s); // call dijkstras once more to find path from transit to source.
-					x = G.edgeTo[t];
-					path.push(x);
-					x = t;
-				}
-			}
-
-			int prevVertex = s;
-			while (!path.isEmpty()) {
-				int v = path.pop();
-
-				Iterable<Route> children = G.adj(prevVertex);
-
-				for (Route route : children) {
-					int to = cities.indexOf(route.destination);
-					if (to == v) {
-						cheapestPath.add(route);
-						prevVertex = to;
-						break;
-					}
-				}
-			}
-
-			cheapestPathSet.add(cheapestPath);
-		}
-
-		return cheapestPathSet;
-	}
-
-	/**
-	 * finds one Minimum Spanning Tree (MST) for each connected component of
-	 * the graph
-	 * 
-	 * @return a (possibly empty) Set<Set<Route>> of MSTs. Each MST is a Set<Route>
-	 *         of Route objects representing the MST edges.
-	 */
-
-	public Set<Set<Route>> getMSTs() {
-		Set<Set<Route>> mstSet = new HashSet<Set<Route>>();
-		mstSet.add(G.kruskals());
-
-		return mstSet;
-	}
-
-	/**
-	 * finds all itineraries starting out of a source city and within a given
-	 * price
-	 * 
-	 * @param city   the String city name
-	 * @param budget the double budget amount in dollars
-	 * @return a (possibly empty) Set<ArrayList<Route>> of paths with a total cost
-	 *         less than or equal to the budget. Each path is an ArrayList<Route> of
-	 *         Route
-	 *         objects starting with a Route object out of the source city.
-	 */
-	public Set<ArrayList<Route>> tripsWithin(String city, double budget)
-			throws CityNotFoundException {
-		if (!cities.contains(city))
-			throw new CityNotFoundException(city);
-
-		int source = cities.indexOf(city);
-
-		Set<ArrayList<Route>> citiesInTrip = new HashSet<>(); // the set of cities included in such trip.
-		boolean[] verticiesVisited = new boolean[numOfCities]; // an array to track verticies visited.
-		this.routes = new ArrayList<>(); // list of routes within budget.
-
-		double[] costTo = new double[numOfCities];
-		int[] edgeTo = new int[numOfCities];
-
-		for (int i = 0; i < edgeTo.length; i++) {
-			edgeTo[i] = -1;
-			costTo[i] = 0.0;
-			verticiesVisited[i] = false;
-		}
-
-		int current;
-		verticiesVisited[source] = true; // mark the source vertex as visited.
-
-		Queue<Integer> queue = new LinkedList<>(); // queue to perform a bfs traversal from source vertex.
-		queue.add(source); // sdd the source vertex to the queue.
-
-		while (!queue.isEmpty()) // iterate until each path within the budget
-		{
-			current = queue.poll(); // get the next vertex from the queue.
-
-			for (Route r : G.adj(current)) // check if each neighbor is visited or within budget.
-			{
-				double costToNeighbor = costTo[current] + r.price; // calculate the cost to the neighbor.
-				int neighbor = cities.indexOf(r.destination); // index of the neighbor vertex.
-
-				if ((neighbor == source) || (neighbor == edgeTo[current])) // skip if neighbor is the source vertex.
-					continue;
-
-				// check if neighbor is within budget.
-				if (costToNeighbor <= budget) {
-					ArrayList<Route> path = new ArrayList<Route>();
-
-					if (!verticiesVisited[neighbor]) // check if neighbor has been visited; process otherwise.
-					{
-						queue.add(neighbor); // add neighbor to the queue.
-						edgeTo[neighbor] = current; // create path from neighbor to source.
-						costTo[neighbor] = costToNeighbor; // initialize cost to neighbor from source.
-						verticiesVisited[neighbor] = true; // mark neighbor as visited.
-						path.add(r);
-					}
-
-					// get the path from current to source.
-					for (int child = current; edgeTo[child] != -1; child = edgeTo[child]) {
-						int parent = edgeTo[child]; // get the parent of the vertex in the path.
-						for (Route r1 : G.adj(parent)) {
-							int vertex = cities.indexOf(r1.destination);
-							if (vertex == child)
-								path.add(0, r1); // add to the beginning of the path.
-
-							break;
-						}
-					}
-
-					citiesInTrip.add(new ArrayList<>(path)); // add the path to the list of valid paths.
-				}
-			}
-		}
-
-		return citiesInTrip;
-	}
-
-	/**
-	 * finds all itineraries within a given price regardless of the
-	 * starting city
-	 * 
-	 * @param budget the double budget amount in dollars
-	 * @return a (possibly empty) Set<ArrayList<Route>> of paths with a total cost
-	 *         less than or equal to the budget. Each path is an ArrayList<Route> of
-	 *         Route
-	 *         objects.
-	 */
-	public Set<ArrayList<Route>> tripsWithin(double budget) {
-		Set<ArrayList<Route>> tripSet = new HashSet<ArrayList<Route>>();
-		Set<ArrayList<Route>> tripList;
-
-		for (String city : cities) {
-			try {
-				tripList = tripsWithin(city, budget);
-
-				for (ArrayList<Route> trip : tripList)
-					tripSet.add(trip);
-			} catch (CityNotFoundException e) {
-				System.out.println(e + " No such city.");
-			}
-		}
-
-		return tripSet;
-	}
-
-	/**
-	 * delete a given non-stop route from the Airline's schedule. Both directions
-	 * of the route have to be deleted.
-	 * 
-	 * @param source      the String source city name
-	 * @param destination the String destination city name
-	 * @return true if the route is deleted successfully and false if no route
-	 *         existed between the two cities
-	 * @throws CityNotFoundException if any of the two cities are not found in the
-	 *                               Airline system
-	 */
-	public boolean deleteRoute(String source, String destination)
-			throws CityNotFoundException {
-
-		// check if any of the cities are not found in Airline system.
-		if ((!cities.contains(source) || (!cities.contains(destination)))) {
-			throw new CityNotFoundException(source);
-		}
-
-		int s = cities.indexOf(source);
-		int d = cities.indexOf(destination);
-
-		return G.deleteEdge(s, d);
-	}
-
-	/**
-	 * delete a given city and all non-stop routes out of and into the city from
-	 * the Airline schedule.
-	 * 
-	 * @param city the String city name
-	 * @throws CityNotFoundException if the city is not found in the Airline system
-	 */
-	public void deleteCity(String city) throws CityNotFoundException {
-		// check if any of the cities are not found in Airline system.
-		if (!retrieveCityNames().contains(city)) {
-			throw new CityNotFoundException(city);
-		}
-
-		int cityToDelete = cities.indexOf(city);// get the index of the city to delete.
-
-		// loop through every route for each city.
-		// delete any route with a corresponding destination to
-		// the city to delete.
-		for (int i = 0; i < numOfCities; i++) {
-			if (i == cityToDelete)
-				continue;
-
-			for (Route route : G.adj(i)) {
-				int d = cities.indexOf(route.destination);
-				if (d == cityToDelete) {
-					G.deleteEdge(i, cityToDelete);
-					break;
-				}
-			}
-		}
-
-		G.deleteVertex(cityToDelete);
-		cities.remove(cityToDelete);
-		numOfCities--;
-	}
-
-	private class Digraph {
-		private static final int INFINITY = Integer.MAX_VALUE;
-		private int v; // number of vertices.
-		private int e; // number of edges.
-		private ArrayList<LinkedList<Route>> adj; // adjacency list.
-		private int[] edgeTo; // edgeTo[i] = previous edge on shortest s-d path.
-		private double[] costTo; // cost[i] = cost to vertex i from edgeTo[i].
-		boolean[] marked; // array to track vertices that have been visited.
-		private int[] bestEdge; // array of best edges to vertices forming an MST.
-
-		// contructor for Digraph object with v vertices
-		public Digraph(int v) {
-			if (v < 0)
-				throw new RuntimeException("Number of vertices must be nonnegative");
-			this.v = v;
-			this.e = 0;
-
-			ArrayList<LinkedList<Route>> temp = new ArrayList<LinkedList<Route>>();
-			adj = temp;
-
-			// create linked list of routes for each vertex v
-			for (int i = 0; i < v; i++)
-				adj.add(new LinkedList<Route>());
-		}
-
-		/**
-		 * Add the route r to this directed graph.
-		 */
-		public void addEdge(Route route) {
-			int from = cities.indexOf(route.source);
-			adj.get(from).add(route);
-			e++;
-		}
-
-		// function to delete an edge given a source and destination.
-		public boolean deleteEdge(int source, int destination) {
-			boolean success = false;
-
-			// Traverse the graph until the right route is located.
-			for (Route route : adj(source)) {
-				int d = cities.indexOf(route.destination);
-				if (d == destination) // delete the route if the destinations correspond.
-				{
-					adj.get(source).remove(route); // remove the route from the graph departing from "source".
-					success = true; // initialize a successful removal.
-					e--;
-					break;
-				}
-			}
-
-			// Traverse the graph until the right route is located.
-			for (Route route : adj(destination)) {
-				int s = cities.indexOf(route.destination);
-				if (s == source) // delete the route if the destinations correspond.
-				{
-					adj.get(destination).remove(route); // remove the route from the graph departing from "destination".
-					e--;
-					return success; // return the success status.
-				}
-			}
-
-			return success;
-		}
-
-		public void deleteVertex(int vertexToDelete) {
-			adj.remove(vertexToDelete);
-			v--;
-		}
-
-		public Iterable<Route> adj(int i) {
-			return adj.get(i);
-		}
-
-		// Dijkstra's algorithm to help perform BEST-First-Search.
-		public void dijkstras(int source) {
-			marked = new boolean[this.v]; // marked array of vertices.
-			costTo = new double[this.v]; // cost array array of vetices.
-
-			edgeTo = new int[this.v]; // parent array of vertices.
-			for (int i = 0; i < v; i++) {
-				costTo[i] = INFINITY;
-				marked[i] = false;
-			}
-
-			costTo[source] = 0.0;
-			marked[source] = true;
-			int nMarked = 1;
-			int current = source;
-
-			while (nMarked < this.v) {
-				for (Route r : adj(current)) {
-					int d = cities.indexOf(r.destination);
-					if ((costTo[current] + r.price) < costTo[d]) {
-						// :update edgeTo and costTo
-						costTo[d] = costTo[current] + r.price;
-						edgeTo[d] = current;
-					}
-				}
-
-				// Find the vertex with minimim path distance
-				// This can be done more effiently using a priority queue!
-				double min = INFINITY;
-				current = -1;
-
-				for (int i = 0; i < costTo.length; i++) {
-					if (marked[i])
-						continue;
-
-					if (costTo[i] < min) {
-						min = costTo[i];
-						current = i;
-					}
-				}
-
-				if (current == -1)
-					break;
-
-				marked[current] = true;
-				nMarked++;
-			}
-		}
-
-		public Set<Route> kruskals() {
-			marked = new boolean[this.v]; // marked array of vertices.
-			bestEdge = new int[this.v]; // array of best edges for vertices.
-
-			Set<Route> MST = new HashSet<Route>(); // Set holding MST(s).
-			UF UF = new UF(this.v); // create a union-find data structure.
-
-			edgeTo = new int[this.v]; // parent array of vertices.
-			for (int i = 0; i < this.v; i++) {
-				bestEdge[i] = INFINITY;
-				marked[i] = false;
-			}
-
-			int nMarked = 0; // Fix: initialize nMarked to 0
-			int current = 0;
-			edgeTo[current] = current;
-			marked[current] = true;
-			nMarked++;
-
-			Queue<Route> pq = new PriorityQueue<Route>(); // create priority queue.
-
-			while (nMarked < this.v) { // Fix: update loop condition
-				// add all edges of the current vertex that have not yet been added
-				for (Route r : adj(current)) {
-					int d = cities.indexOf(r.destination);
-					if (!marked[d]) {
-						pq.add(r); // add the edge to the priority queue if not
-					}
-				}
-				marked[current] = true;
-				nMarked++;
-
-				if (pq.isEmpty()) {
-					// If all edges are processed and priority queue is empty, break out of the loop
-					break;
-				}
-
-				// Fix: Update current vertex to the next unmarked vertex
-				do {
-					current++;
-					if (current == this.v) {
-						current = 0;
-					}
-				} while (marked[current]);
-
-				// Fix: If all vertices are marked, break out of the loop
-				if (nMarked == this.v) {
-					break;
-				}
-			}
-
-			// unify all vertices to a component
-			// starting with vertices connecting the min edges.
-			while (UF.count() > 1) {
-				if (pq.isEmpty()) {
-					// return MST if all edges are processed
-					return MST;
-				}
-
-				Route minEdge = pq.poll(); // retrieve min edge.
-				int p = cities.indexOf(minEdge.source); // get index of source.
-				int q = cities.indexOf(minEdge.destination); // get index of destination.
-
-				if (!UF.isConnected(p, q)) // if the two components are not connected:
-				{
-					MST.add(minEdge); // add that edge to MST
-					UF.unify(p, q); // unify both components into one.
-				}
-			}
-
-			return MST;
-		}
-	}
-
-	/*
-	 * private inner class to represent union-find data structure.
-	 */
-	class UF {
-		private int count;
-		private int[] id;
-		private int[] size;
-
-		public UF(int n) {
-			if (n <= 0)
-				throw new IllegalArgumentException("Component size must be greater than zero.");
-
-			count = n;
-			id = new int[n];
-			size = new int[n];
-
-			// intialize each vertex to have itself as its ID.
-			for (int i = 0; i < id.length; i++) {
-				id[i] = i;
-				size[i] = 1; // each tree has initial size of 1.
-			}
-		}
-
-		// unify vertices p and q into one component.
-		public void unify(int p, int q) {
-			// return if two vertices are already coonnected
-			// to the same component.
-
-			int pID = find(p), qID = find(q);
-			if (pID == qID)
-				return;
-
-			if (size[pID] < size[qID]) // check if first component is smaller.
-			{
-				id[pID] = qID; // update ID of smaller component.
-				size[qID] += size[pID]; // add the size of both components.
-			} else // check if first component is larger and update.
-			{
-				id[qID] = pID;
-				size[pID] += size[qID];
-			}
-
-			count--; // decrement the count after merging two components.
-		}
-
-		// find the component of vertex p.
-		// returns the ID of p.
-		public int find(int p) {
-			if (p == id[p]) // locate the root of the component.
-				return p;
-
-			// copress path leading back to root
-			// using "path compression" to achieve amortized constant time
-			return id[p] = find(id[p]);
-		}
-
-		// check if two vertices are connected to the same component.
-		public boolean isConnected(int p, int q) {
-			return find(p) == find(q);
-		}
-
-		// return the size of the component that 'p' belongs to.
-		public int componentSize(int p) {
-			return size[find(p)];
-		}
-
-		// return the number of components.
-		public int count() {
-			return count;
-		}
-	}
-}
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * The schedule is kept as a sequence of immutable graph versions. Queries pin
+ * the current version and run against it without locks, while a writer (one
+ * at a time) edits a copy that shares every adjacency segment it does not
+ * touch, and publishes it with a single volatile write once it is complete.
+ */
+final public class AirlineSystem implements AirlineInterface {
+	private volatile Digraph G = new Digraph(); // the published graph version.
+	private final Object writeLock = new Object(); // held while building the next version.
+	private final AtomicBoolean compacting = new AtomicBoolean(); // a compaction is scheduled.
+	private final boolean offHeap; // loadRoutes stores the routes off the heap.
+	private final AirlineMetrics metrics = new AirlineMetrics();
+
+	/**
+	 * creates an empty Airline system that keeps its routes on the heap
+	 */
+	public AirlineSystem() {
+		this(false);
+	}
+
+	/**
+	 * creates an empty Airline system. Off the heap, the routes read by
+	 * loadRoutes are stored in direct memory, so the heap only grows with the
+	 * number of cities and with the cities whose routes are edited later.
+	 * 
+	 * @param offHeap true to store loaded routes off the heap
+	 */
+	public AirlineSystem(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * returns the metrics of this Airline system: a latency histogram for each
+	 * operation and counts of the work its searches did. Nothing is recorded
+	 * until they are enabled.
+	 * 
+	 * @return the AirlineMetrics, which can also be registered over JMX
+	 */
+	public AirlineMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * reads the city names and the routes from a file. A timetable section at
+	 * the end of the file, as read by Timetable, is skipped.
+	 * 
+	 * @param fileName the String file name
+	 * @return true if routes loaded successfully and false otherwise
+	 */
+	public boolean loadRoutes(String fileName) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.LOAD_ROUTES);
+		Digraph next = new Digraph(); // new graph object
+		try {
+			// Open txt file for scanning
+			Scanner fileScan = new Scanner(new FileInputStream(fileName));
+
+			// Get the number of cities (first line in txt file).
+			int numOfCities = fileScan.nextInt();
+			int[] ids = new int[numOfCities];
+
+			// Read city names into set
+			for (int i = 0; i < numOfCities; i++)
+				ids[i] = next.addVertex(fileScan.next());
+
+			if (offHeap) {
+				next = loadOffHeap(fileScan, next);
+			} else {
+				int source;
+				int destination;
+				int distance;
+				double price;
+
+				// Read the direct routes and their wieghts, up to a timetable if any.
+				while (fileScan.hasNextInt()) {
+					source = ids[fileScan.nextInt() - 1]; // get the source
+					destination = ids[fileScan.nextInt() - 1]; // get the destination
+					distance = fileScan.nextInt(); // get the distance
+					price = fileScan.nextDouble(); // get the price
+
+					// add routes to the graph
+					next.addRoute(source, destination, distance, price);
+				}
+			}
+
+			// close file
+			fileScan.close();
+
+			// index the components up front, so that the first reachability
+			// check does not have to.
+			next.forest = next.kruskals();
+		}
+
+		// Return false if no such file is found
+		catch (IOException e) {
+			return false;
+		} finally {
+			probe.done();
+		}
+
+		synchronized (writeLock) {
+			publish(next);
+		}
+		return true;
+	}
+
+	// reads the routes left in fileScan into primitive arrays and stores them
+	// off the heap with the cities of the given graph.
+	private static Digraph loadOffHeap(Scanner fileScan, Digraph cities) throws IOException {
+		String[] names = new String[cities.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = cities.name(i);
+
+		int n = 0;
+		int[] from = new int[16];
+		int[] to = new int[16];
+		int[] distance = new int[16];
+		double[] price = new double[16];
+		while (fileScan.hasNextInt()) {
+			if (n == from.length) {
+				from = Arrays.copyOf(from, n * 2);
+				to = Arrays.copyOf(to, n * 2);
+				distance = Arrays.copyOf(distance, n * 2);
+				price = Arrays.copyOf(price, n * 2);
+			}
+
+			from[n] = fileScan.nextInt() - 1;
+			to[n] = fileScan.nextInt() - 1;
+			distance[n] = fileScan.nextInt();
+			price[n++] = fileScan.nextDouble();
+		}
+
+		return new Digraph(OffHeapGraph.build(names, n, from, to, distance, price, null));
+	}
+
+	/**
+	 * writes the cities and routes into a binary snapshot file, which
+	 * loadSnapshot maps straight into memory instead of parsing it.
+	 * 
+	 * @param fileName the String file name
+	 * @return true if the snapshot was saved successfully and false otherwise
+	 */
+	public boolean saveSnapshot(String fileName) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.SAVE_SNAPSHOT);
+		Digraph g = pin();
+		try {
+			OffHeapGraph.write(g, fileName);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	// writes routes given as parallel arrays straight into a snapshot file,
+	// without building a graph; for NetworkGenerator.
+	static void writeSnapshot(String[] names, int n, int[] from, int[] to, int[] distance,
+			double[] price, String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			((MappedByteBuffer) OffHeapGraph.build(names, n, from, to, distance, price, channel).buffer).force();
+		}
+	}
+
+
+	/**
+	 * replaces the schedule with a snapshot written by saveSnapshot. The file is
+	 * mapped into memory and read in place, off the heap; only the routes of
+	 * cities edited later are copied onto the heap.
+	 * 
+	 * @param fileName the String file name
+	 * @return true if the snapshot loaded successfully and false otherwise
+	 */
+	public boolean loadSnapshot(String fileName) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.LOAD_SNAPSHOT);
+		Digraph next;
+		try {
+			next = new Digraph(OffHeapGraph.map(fileName));
+		} catch (IOException e) {
+			return false;
+		} finally {
+			probe.done();
+		}
+
+		synchronized (writeLock) {
+			publish(next);
+		}
+		return true;
+	}
+
+	/**
+	 * writes the city names and the routes into a file
+	 * 
+	 * @param fileName the String file name
+	 * @return true if routes saved successfully and false otherwise
+	 */
+	public boolean saveRoutes(String fileName) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.SAVE_ROUTES);
+		Digraph g = pin();
+		// create a File object to write to the file.
+		try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+			// number the cities from 1 in the same format loadRoutes reads.
+			int[] number = new int[g.slots()];
+			int n = 0;
+
+			writer.println(g.size());
+			for (int i = 0; i < g.slots(); i++) {
+				if (g.name(i) != null) {
+					number[i] = ++n;
+					writer.println(g.name(i));
+				}
+			}
+
+			// write each route once, from its lower numbered end.
+			for (int i = 0; i < g.slots(); i++) {
+				Edges edges = g.adj(i);
+				for (int j = 0; j < edges.end(); j++) {
+					if (edges.has(j) && number[i] < number[edges.target(j)])
+						writer.println(number[i] + " " + number[edges.target(j)] + " "
+								+ edges.distance(j) + " " + edges.price(j));
+				}
+			}
+
+			return !writer.checkError();
+		} catch (IOException e) {
+			return false;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * returns the set of city names in the Airline system. The set is an
+	 * unmodifiable view of the current version of the schedule, so getting it
+	 * copies nothing; later changes to the schedule do not show through it.
+	 * 
+	 * @return a (possibly empty) Set<String> of city names
+	 */
+	public Set<String> retrieveCityNames() {
+		// a published version never changes, so the view needs no pin.
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.RETRIEVE_CITY_NAMES);
+		try {
+			return new CityNames(G);
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * returns the set of direct routes out of a given city. The set is an
+	 * unmodifiable view of the city's routes in the current version of the
+	 * schedule, so getting it copies nothing; later changes to the schedule do
+	 * not show through it.
+	 * 
+	 * @param city the String city name
+	 * @return a (possibly empty) Set<Route> of Route objects representing the
+	 *         direct routes out of city
+	 * @throws CityNotFoundException if the city is not found in the Airline
+	 *                               system
+	 */
+	public Set<Route> retrieveDirectRoutesFrom(String city)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.RETRIEVE_DIRECT_ROUTES_FROM);
+		try {
+			Digraph g = G;
+
+			// Get the index of city from the name index
+			return new DirectRoutes(g, indexOf(g, city));
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds cheapest path(s) between two cities. Every path with the lowest
+	 * total price is returned; prices are compared exactly, in cents.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @return a (possibly empty) Set<ArrayList<Route>> of cheapest
+	 *         paths. Each path is an ArrayList<Route> of Route objects that
+	 *         includes a
+	 *         Route out of the source and a Route into the destination.
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Set<ArrayList<Route>> cheapestItinerary(String source,
+			String destination) throws CityNotFoundException {
+		if (source.equals(destination))
+			return null;
+
+		return bestItinerary(source, destination, Metric.PRICE,
+				AirlineMetrics.Op.CHEAPEST_ITINERARY, Guard.NONE);
+	}
+
+	/**
+	 * finds the cheapest path(s) between two cities like cheapestItinerary,
+	 * within limits. A search stopped early returns the cheapest paths it has
+	 * found, which are cheapest but may not be all of them, or none if it did
+	 * not reach the destination.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param limits      the Limits of the search
+	 * @return a Limited<Set<ArrayList<Route>>> of the cheapest paths found; the
+	 *         result is null if both cities are the same
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Limited<Set<ArrayList<Route>>> cheapestItinerary(String source,
+			String destination, Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		Set<ArrayList<Route>> itineraries = source.equals(destination) ? null
+				: bestItinerary(source, destination, Metric.PRICE,
+						AirlineMetrics.Op.CHEAPEST_ITINERARY, guard);
+		return new Limited<Set<ArrayList<Route>>>(itineraries, guard.truncation);
+	}
+
+	/**
+	 * finds the best path(s) between two cities under a metric: the cheapest,
+	 * the shortest or the one with the fewest legs. Every path with the lowest
+	 * total is returned. All three metrics run the same search, which reads
+	 * the weights from primitive columns kept beside each city's routes.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param metric      the Metric to minimize
+	 * @return a (possibly empty) Set<ArrayList<Route>> of best paths. Each path
+	 *         is an ArrayList<Route> of Route objects from the source to the
+	 *         destination.
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Set<ArrayList<Route>> bestItinerary(String source,
+			String destination, Metric metric) throws CityNotFoundException {
+		return bestItinerary(source, destination, metric, AirlineMetrics.Op.BEST_ITINERARY,
+				Guard.NONE);
+	}
+
+	/**
+	 * finds the best path(s) between two cities under a metric like
+	 * bestItinerary, within limits. A search stopped early returns the best
+	 * paths it has found, which are best but may not be all of them, or none
+	 * if it did not reach the destination.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param metric      the Metric to minimize
+	 * @param limits      the Limits of the search
+	 * @return a Limited<Set<ArrayList<Route>>> of the best paths found
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Limited<Set<ArrayList<Route>>> bestItinerary(String source,
+			String destination, Metric metric, Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		Set<ArrayList<Route>> itineraries = bestItinerary(source, destination, metric,
+				AirlineMetrics.Op.BEST_ITINERARY, guard);
+		return new Limited<Set<ArrayList<Route>>>(itineraries, guard.truncation);
+	}
+
+	private Set<ArrayList<Route>> bestItinerary(String source, String destination,
+			Metric metric, AirlineMetrics.Op op, Guard guard) throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(op);
+		Digraph g = pin();
+		try {
+			// check if any of the cities are not found in Airline system.
+			int s = indexOf(g, source);
+			int d = indexOf(g, destination);
+
+			Set<ArrayList<Route>> shortestDistanceSet = new LinkedHashSet<ArrayList<Route>>();
+
+			// skip the search if no itinerary can connect the two cities.
+			if (s == d || !forest(g, false).isConnected(s, d))
+				return shortestDistanceSet;
+
+			// follow every branch of the predecessor DAG back to the source.
+			ShortestPaths sp = new ShortestPaths(g, s, d, metric, guard);
+			for (int[] path : sp.allPathsTo(g, d, guard))
+				shortestDistanceSet.add(legs(g, path));
+
+			sp.report(probe);
+			probe.paths(shortestDistanceSet.size());
+			if (guard.stopped())
+				probe.truncated();
+			return shortestDistanceSet;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds cheapest path(s) between two cities going through a third city
+	 * 
+	 * @param source      the String source city name
+	 * @param transit     the String transit city name
+	 * @param destination the String destination city name
+	 * @return a (possibly empty) Set<ArrayList<Route>> of cheapest
+	 *         paths. Each path is an ArrayList<Route> of city names that includes
+	 *         a Route out of source, into and out of transit, and into destination.
+	 * @throws CityNotFoundException if any of the three cities are not found in
+	 *                               the Airline system
+	 */
+	public Set<ArrayList<Route>> cheapestItinerary(String source,
+			String transit, String destination) throws CityNotFoundException {
+		return cheapestItinerary(source, transit, destination, Guard.NONE);
+	}
+
+	/**
+	 * finds the cheapest path(s) between two cities going through a third city
+	 * like cheapestItinerary, within limits. Both searches share the limits,
+	 * and so do the joined paths: ties on both sides of the transit city can
+	 * join into many more paths than either side has, and no more than the
+	 * maximum number of results are joined. A search stopped early returns the
+	 * cheapest paths it has found, or none if it did not reach the transit
+	 * city and then the destination.
+	 * 
+	 * @param source      the String source city name
+	 * @param transit     the String transit city name
+	 * @param destination the String destination city name
+	 * @param limits      the Limits of the search
+	 * @return a Limited<Set<ArrayList<Route>>> of the cheapest paths found
+	 * @throws CityNotFoundException if any of the three cities are not found in
+	 *                               the Airline system
+	 */
+	public Limited<Set<ArrayList<Route>>> cheapestItinerary(String source,
+			String transit, String destination, Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		Set<ArrayList<Route>> itineraries = cheapestItinerary(source, transit, destination,
+				guard);
+		return new Limited<Set<ArrayList<Route>>>(itineraries, guard.truncation);
+	}
+
+	private Set<ArrayList<Route>> cheapestItinerary(String source, String transit,
+			String destination, Guard guard) throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.CHEAPEST_ITINERARY_VIA);
+		Digraph g = pin();
+		try {
+			// check if any of the cities are not found in Airline system.
+			int s = indexOf(g, source);
+			int d = indexOf(g, destination);
+			int t = indexOf(g, transit);
+
+			Set<ArrayList<Route>> cheapestPathSet = new LinkedHashSet<ArrayList<Route>>();
+
+			// skip the searches if no itinerary can connect the three cities.
+			Forest forest = forest(g, false);
+			if (!forest.isConnected(s, t) || !forest.isConnected(t, d))
+				return cheapestPathSet;
+
+			// run both searches before following their paths, which may stop
+			// the guard once either side has more paths than the results allowed.
+			ShortestPaths first = new ShortestPaths(g, s, t, Metric.PRICE, guard);
+			ShortestPaths second = new ShortestPaths(g, t, d, Metric.PRICE, guard);
+			List<int[]> toTransit = first.allPathsTo(g, t, guard);
+			List<ArrayList<Route>> fromTransit = new ArrayList<ArrayList<Route>>();
+			for (int[] path : second.allPathsTo(g, d, guard))
+				fromTransit.add(legs(g, path));
+
+			// join each cheapest path into transit with each cheapest path out of it.
+			join: for (int[] path : toTransit) {
+				ArrayList<Route> legs = legs(g, path);
+				for (ArrayList<Route> out : fromTransit) {
+					if (guard.full(cheapestPathSet.size()))
+						break join;
+
+					ArrayList<Route> cheapestPath = new ArrayList<Route>(legs);
+					cheapestPath.addAll(out);
+					cheapestPathSet.add(cheapestPath);
+				}
+			}
+
+			first.report(probe);
+			second.report(probe);
+			probe.paths(cheapestPathSet.size());
+			if (guard.stopped())
+				probe.truncated();
+			return cheapestPathSet;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds the k cheapest itineraries between two cities that visit no city
+	 * twice, cheapest first, using Yen's algorithm. The search for each detour
+	 * reuses one shortest-path tree grown from the destination, which either
+	 * is the detour already or steers an A* search straight to it, so asking
+	 * for ten itineraries costs far less than ten searches.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param k           the number of itineraries wanted
+	 * @return a (possibly empty) List<ArrayList<Route>> of at most k paths in
+	 *         order of total price. Each path is an ArrayList<Route> of Route
+	 *         objects from the source to the destination.
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public List<ArrayList<Route>> kCheapestItineraries(String source,
+			String destination, int k) throws CityNotFoundException {
+		return kCheapestItineraries(source, destination, k, Guard.NONE);
+	}
+
+	/**
+	 * finds the k cheapest itineraries between two cities like
+	 * kCheapestItineraries, within limits. A search stopped early returns the
+	 * cheapest itineraries found so far, which are the first of the k in
+	 * order.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param k           the number of itineraries wanted
+	 * @param limits      the Limits of the search
+	 * @return a Limited<List<ArrayList<Route>>> of the paths found in order of
+	 *         total price
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Limited<List<ArrayList<Route>>> kCheapestItineraries(String source,
+			String destination, int k, Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		List<ArrayList<Route>> itineraries = kCheapestItineraries(source, destination, k, guard);
+		return new Limited<List<ArrayList<Route>>>(itineraries, guard.truncation);
+	}
+
+	private List<ArrayList<Route>> kCheapestItineraries(String source,
+			String destination, int k, Guard guard) throws CityNotFoundException {
+		if (k <= 0)
+			throw new IllegalArgumentException("k must be positive: " + k);
+
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.K_CHEAPEST_ITINERARIES);
+		Digraph g = pin();
+		try {
+			int s = indexOf(g, source);
+			int d = indexOf(g, destination);
+
+			List<ArrayList<Route>> itineraries = new ArrayList<ArrayList<Route>>();
+			if (s == d || !forest(g, false).isConnected(s, d))
+				return itineraries;
+
+			Yen yen = new Yen(g, d, guard);
+			for (Itinerary itinerary : yen.cheapest(s, k))
+				itineraries.add(legs(g, itinerary.cities));
+
+			yen.report(probe);
+			probe.paths(itineraries.size());
+			if (guard.stopped())
+				probe.truncated();
+			return itineraries;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds the itineraries between two cities that trade off total price,
+	 * total distance and number of legs: every itinerary returned is better
+	 * than each of the others in at least one of the three, and no itinerary
+	 * left out is at least as good as one returned in all three. The whole
+	 * trade-off set comes out of one search; where several itineraries tie on
+	 * all three, one of them is returned.
+	 *
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @return a (possibly empty) List<ArrayList<Route>> of paths in order of
+	 *         total price, then total distance. Each path is an
+	 *         ArrayList<Route> of Route objects from the source to the
+	 *         destination.
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public List<ArrayList<Route>> paretoItineraries(String source,
+			String destination) throws CityNotFoundException {
+		return paretoItineraries(source, destination, Guard.NONE);
+	}
+
+	/**
+	 * finds the itineraries between two cities that trade off total price,
+	 * total distance and number of legs like paretoItineraries, within limits.
+	 * A search stopped early returns the trade-offs found so far, each of
+	 * which is in the full answer; those left out cost at least as much as
+	 * every one returned.
+	 *
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param limits      the Limits of the search
+	 * @return a Limited<List<ArrayList<Route>>> of the paths found in order of
+	 *         total price, then total distance
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Limited<List<ArrayList<Route>>> paretoItineraries(String source,
+			String destination, Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		List<ArrayList<Route>> itineraries = paretoItineraries(source, destination, guard);
+		return new Limited<List<ArrayList<Route>>>(itineraries, guard.truncation);
+	}
+
+	private List<ArrayList<Route>> paretoItineraries(String source,
+			String destination, Guard guard) throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.PARETO_ITINERARIES);
+		Digraph g = pin();
+		try {
+			int s = indexOf(g, source);
+			int d = indexOf(g, destination);
+
+			List<ArrayList<Route>> itineraries = new ArrayList<ArrayList<Route>>();
+			if (s == d || !forest(g, false).isConnected(s, d))
+				return itineraries;
+
+			Pareto pareto = new Pareto(g, s, d, guard);
+			for (int[] path : pareto.paths())
+				itineraries.add(legs(g, path));
+
+			pareto.report(probe);
+			probe.paths(itineraries.size());
+			if (guard.stopped())
+				probe.truncated();
+			return itineraries;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds the cheapest fare from each of the given sources to each of the
+	 * given destinations. One search runs per source, all of them in
+	 * parallel, and each stops as soon as every destination it can reach is
+	 * settled.
+	 *
+	 * @param sources      the Collection<String> of source city names
+	 * @param destinations the Collection<String> of destination city names
+	 * @param withPaths    whether to keep one cheapest path for each pair
+	 * @return a FareTable with a row per distinct source and a column per
+	 *         distinct destination, in the order given
+	 * @throws CityNotFoundException if any of the cities are not found in the
+	 *                               Airline system
+	 */
+	public FareTable fareTable(Collection<String> sources,
+			Collection<String> destinations, boolean withPaths) throws CityNotFoundException {
+		return fareTable(sources, destinations, withPaths, (Limits) null).result();
+	}
+
+	/**
+	 * finds the cheapest fares like fareTable, within limits. Each search runs
+	 * under the limits on its own, so the most vertices settled and the time
+	 * apply to every source; the number of results does not apply. A search
+	 * stopped early leaves the fares to the destinations it did not settle as
+	 * if no itinerary connected them.
+	 *
+	 * @param sources      the Collection<String> of source city names
+	 * @param destinations the Collection<String> of destination city names
+	 * @param withPaths    whether to keep one cheapest path for each pair
+	 * @param limits       the Limits of each search
+	 * @return a Limited<FareTable> with a row per distinct source and a column
+	 *         per distinct destination, in the order given
+	 * @throws CityNotFoundException if any of the cities are not found in the
+	 *                               Airline system
+	 */
+	public Limited<FareTable> fareTable(Collection<String> sources,
+			Collection<String> destinations, boolean withPaths, Limits limits)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.FARE_TABLE);
+		Digraph g = pin();
+		try {
+			List<String> rows = new ArrayList<String>(new LinkedHashSet<String>(sources));
+			List<String> columns = new ArrayList<String>(new LinkedHashSet<String>(destinations));
+			int[] s = new int[rows.size()];
+			int[] d = new int[columns.size()];
+			for (int i = 0; i < s.length; i++)
+				s[i] = indexOf(g, rows.get(i));
+			for (int j = 0; j < d.length; j++)
+				d[j] = indexOf(g, columns.get(j));
+
+			// a guard counts for one thread, so each search gets its own,
+			// all started before any search runs.
+			Guard[] guards = new Guard[s.length];
+			for (int i = 0; i < s.length; i++)
+				guards[i] = (limits == null) ? Guard.NONE : new Guard(limits);
+
+			Forest forest = forest(g, false);
+			long[] cents = new long[s.length * d.length];
+			ArrayList<Route>[] paths = withPaths ? newPathArray(cents.length) : null;
+			long[] work = new long[3 * s.length]; // the work of each search, for the probe.
+			IntStream.range(0, s.length).parallel().forEach(i -> {
+				int[] reachable = Arrays.stream(d).filter(x -> forest.isConnected(s[i], x)).toArray();
+				ShortestPaths sp = (reachable.length == 0) ? null
+						: new ShortestPaths(g, s[i], reachable, Metric.PRICE, guards[i]);
+				for (int j = 0; j < d.length; j++) {
+					int k = i * d.length + j;
+					cents[k] = (sp == null || !sp.marked[d[j]]) ? -1 : sp.costTo[d[j]];
+					if (paths != null && cents[k] != -1)
+						paths[k] = legs(g, sp.pathTo(d[j]));
+				}
+				if (sp != null) {
+					work[3 * i] = sp.settled;
+					work[3 * i + 1] = sp.relaxed;
+					work[3 * i + 2] = sp.heapOperations;
+				}
+			});
+
+			// the work is reported from this thread, as a probe is not shared.
+			for (int i = 0; i < s.length; i++)
+				probe.searched(work[3 * i], work[3 * i + 1], work[3 * i + 2]);
+			if (paths != null)
+				probe.paths(Arrays.stream(paths).filter(Objects::nonNull).count());
+
+			Truncation truncation = Truncation.NONE;
+			for (Guard guard : guards)
+				if (truncation == Truncation.NONE)
+					truncation = guard.truncation;
+			if (truncation != Truncation.NONE)
+				probe.truncated();
+			return new Limited<FareTable>(new FareTable(rows, columns, cents, paths), truncation);
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayList<Route>[] newPathArray(int length) {
+		return (ArrayList<Route>[]) new ArrayList<?>[length];
+	}
+
+	// returns the routes between consecutive cities of a path.
+	private static ArrayList<Route> legs(Digraph g, int[] cities) {
+		ArrayList<Route> legs = new ArrayList<Route>();
+		for (int i = 1; i < cities.length; i++)
+			legs.add(g.route(cities[i - 1], cities[i]));
+
+		return legs;
+	}
+
+	/**
+	 * finds one Minimum Spanning Tree (MST) for each connected component of
+	 * the graph. The forest is computed once and then kept up to date as the
+	 * schedule changes: deleting a route outside the forest costs nothing, and
+	 * deleting a tree route or a city only searches the tree it split for a
+	 * replacement route. Only the trees that changed are rebuilt.
+	 * 
+	 * @return a (possibly empty) Set<Set<Route>> of MSTs. Each MST is a Set<Route>
+	 *         of Route objects representing the MST edges.
+	 */
+
+	public Set<Set<Route>> getMSTs() {
+		return getMSTs(false, AirlineMetrics.Op.GET_MSTS);
+	}
+
+	/**
+	 * finds the same MSTs as getMSTs. When the forest has to be computed from
+	 * scratch, this uses Boruvka's algorithm, which spreads the work of each
+	 * round over the common fork/join pool (or over the pool of the calling
+	 * fork/join task, which lets callers choose the number of threads). This
+	 * pays off on large networks.
+	 * 
+	 * @return a (possibly empty) Set<Set<Route>> of MSTs. Each MST is a Set<Route>
+	 *         of Route objects representing the MST edges.
+	 */
+	public Set<Set<Route>> getMSTsParallel() {
+		return getMSTs(true, AirlineMetrics.Op.GET_MSTS_PARALLEL);
+	}
+
+	private Set<Set<Route>> getMSTs(boolean parallel, AirlineMetrics.Op op) {
+		AirlineMetrics.Probe probe = metrics.start(op);
+		Digraph g = pin();
+		try {
+			// reuse the MSTs of this version of the schedule.
+			Set<Set<Route>> msts = g.msts;
+			if (msts != null)
+				return msts;
+
+			msts = forest(g, parallel).msts(g);
+			g.msts = msts;
+			return msts;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * checks whether any itinerary connects two cities. This takes constant
+	 * time: the cities' components are kept up to date with the minimum
+	 * spanning forest as routes and cities are added and deleted.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @return true if destination can be reached from source
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public boolean isReachable(String source, String destination)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.IS_REACHABLE);
+		Digraph g = pin();
+		try {
+			int s = indexOf(g, source);
+			int d = indexOf(g, destination);
+			return forest(g, false).isConnected(s, d);
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * returns the number of connected components of the network, counting a
+	 * city without routes as a component of its own. A rising count means the
+	 * network is fragmenting.
+	 * 
+	 * @return the number of connected components, 0 if there are no cities
+	 */
+	public int componentCount() {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.COMPONENT_COUNT);
+		Digraph g = pin();
+		try {
+			return g.size() - forest(g, false).size();
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * splits the cities into shards of about equal size, cutting as few
+	 * routes as it can between cities of different shards, so that each shard
+	 * can be served on its own (see ShardCoordinator). Cities that share
+	 * many routes are clustered and the clusters split first, so that a hub
+	 * and its spokes stay together; no shard grows past 3% above its share of
+	 * the cities.
+	 *
+	 * @param shards the number of shards
+	 * @return a Map<String, Integer> from each city name to its shard, numbered
+	 *         from 0
+	 */
+	public Map<String, Integer> partition(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("shards must be positive: " + shards);
+
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.PARTITION);
+		Digraph g = pin();
+		try {
+			int[] shard = g.partition(shards);
+			Map<String, Integer> map = new HashMap<String, Integer>(2 * g.size());
+			for (int i = 0; i < g.slots(); i++)
+				if (g.name(i) != null)
+					map.put(g.name(i), shard[i]);
+			return map;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * finds all itineraries starting out of a source city and within a given
+	 * price
+	 * 
+	 * @param city   the String city name
+	 * @param budget the double budget amount in dollars
+	 * @return a (possibly empty) Set<ArrayList<Route>> of paths with a total cost
+	 *         less than or equal to the budget. Each path is an ArrayList<Route> of
+	 *         Route
+	 *         objects starting with a Route object out of the source city.
+	 */
+	public Set<ArrayList<Route>> tripsWithin(String city, double budget)
+			throws CityNotFoundException {
+		return tripsWithin(city, budget, Guard.NONE);
+	}
+
+	/**
+	 * finds the itineraries starting out of a source city and within a given
+	 * price like tripsWithin, within limits. A search stopped early returns
+	 * the trips found so far, which are those through the cities nearest the
+	 * source in number of legs.
+	 * 
+	 * @param city   the String city name
+	 * @param budget the double budget amount in dollars
+	 * @param limits the Limits of the search
+	 * @return a Limited<Set<ArrayList<Route>>> of the trips found
+	 * @throws CityNotFoundException if the city is not found in the Airline
+	 *                               system
+	 */
+	public Limited<Set<ArrayList<Route>>> tripsWithin(String city, double budget,
+			Limits limits) throws CityNotFoundException {
+		Guard guard = new Guard(limits);
+		Set<ArrayList<Route>> trips = tripsWithin(city, budget, guard);
+		return new Limited<Set<ArrayList<Route>>>(trips, guard.truncation);
+	}
+
+	private Set<ArrayList<Route>> tripsWithin(String city, double budget, Guard guard)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.TRIPS_WITHIN_CITY);
+		Digraph g = pin();
+		try {
+			Set<ArrayList<Route>> trips = new HashSet<ArrayList<Route>>();
+			tripsWithin(g, indexOf(g, city), budget, trips, probe, guard);
+			if (guard.stopped())
+				probe.truncated();
+			return trips;
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	// adds the trips out of source within budget on one version of the graph
+	// to citiesInTrip, reporting the work done to probe, until guard stops it.
+	private static void tripsWithin(Digraph g, int source, double budget,
+			Set<ArrayList<Route>> citiesInTrip, AirlineMetrics.Probe probe, Guard guard) {
+		int before = citiesInTrip.size();
+		boolean[] verticiesVisited = new boolean[g.slots()]; // an array to track verticies visited.
+
+		double[] costTo = new double[g.slots()];
+		int[] edgeTo = new int[g.slots()];
+
+		for (int i = 0; i < edgeTo.length; i++) {
+			edgeTo[i] = -1;
+			costTo[i] = 0.0;
+			verticiesVisited[i] = false;
+		}
+
+		int current;
+		verticiesVisited[source] = true; // mark the source vertex as visited.
+
+		Queue<Integer> queue = new LinkedList<>(); // queue to perform a bfs traversal from source vertex.
+		queue.add(source); // sdd the source vertex to the queue.
+		int settled = 0;
+		long relaxed = 0;
+
+		search: while (!queue.isEmpty()) // iterate until each path within the budget
+		{
+			if (!guard.settle()) // stop at the limits of the query.
+				break;
+
+			current = queue.poll(); // get the next vertex from the queue.
+			settled++;
+
+			Edges edges = g.adj(current);
+			relaxed += edges.end();
+			for (int i = 0; i < edges.end(); i++) // check if each neighbor is visited or within budget.
+			{
+				if (!edges.has(i)) // skip deleted routes.
+					continue;
+
+				double costToNeighbor = costTo[current] + edges.price(i); // calculate the cost to the neighbor.
+				int neighbor = edges.target(i); // index of the neighbor vertex.
+
+				if ((neighbor == source) || (neighbor == edgeTo[current])) // skip if neighbor is the source vertex.
+					continue;
+
+				// check if neighbor is within budget.
+				if (costToNeighbor <= budget) {
+					ArrayList<Route> path = new ArrayList<Route>();
+
+					if (!verticiesVisited[neighbor]) // check if neighbor has been visited; process otherwise.
+					{
+						queue.add(neighbor); // add neighbor to the queue.
+						edgeTo[neighbor] = current; // create path from neighbor to source.
+						costTo[neighbor] = costToNeighbor; // initialize cost to neighbor from source.
+						verticiesVisited[neighbor] = true; // mark neighbor as visited.
+						path.add(edges.route(i).from(g.name(current)));
+					}
+
+					// get the path from current to source.
+					for (int child = current; edgeTo[child] != -1; child = edgeTo[child]) {
+						int parent = edgeTo[child]; // get the parent of the vertex in the path.
+						path.add(0, g.route(parent, child)); // add to the beginning of the path.
+					}
+
+					// add the path to the list of valid paths, unless it is a new
+					// one that the limits leave no room for.
+					if (!citiesInTrip.contains(path)) {
+						if (guard.full(citiesInTrip.size()))
+							break search;
+
+						citiesInTrip.add(new ArrayList<>(path));
+					}
+				}
+			}
+		}
+
+		probe.searched(settled, relaxed, 0);
+		probe.trips(citiesInTrip.size() - before);
+	}
+
+	/**
+	 * finds all itineraries within a given price regardless of the
+	 * starting city
+	 * 
+	 * @param budget the double budget amount in dollars
+	 * @return a (possibly empty) Set<ArrayList<Route>> of paths with a total cost
+	 *         less than or equal to the budget. Each path is an ArrayList<Route> of
+	 *         Route
+	 *         objects.
+	 */
+	public Set<ArrayList<Route>> tripsWithin(double budget) {
+		return tripsWithin(budget, Guard.NONE);
+	}
+
+	/**
+	 * finds all itineraries within a given price like tripsWithin, within
+	 * limits. The limits apply to all of the searches together; a query
+	 * stopped early returns the trips found so far, which are all those out
+	 * of some of the cities and some of those out of one more.
+	 * 
+	 * @param budget the double budget amount in dollars
+	 * @param limits the Limits of the query
+	 * @return a Limited<Set<ArrayList<Route>>> of the trips found
+	 */
+	public Limited<Set<ArrayList<Route>>> tripsWithin(double budget, Limits limits) {
+		Guard guard = new Guard(limits);
+		Set<ArrayList<Route>> trips = tripsWithin(budget, guard);
+		return new Limited<Set<ArrayList<Route>>>(trips, guard.truncation);
+	}
+
+	private Set<ArrayList<Route>> tripsWithin(double budget, Guard guard) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.TRIPS_WITHIN);
+		Set<ArrayList<Route>> tripSet = new HashSet<ArrayList<Route>>();
+
+		// every city is searched on the same version of the graph.
+		Digraph g = pin();
+		try {
+			for (int i = 0; i < g.slots() && !guard.stopped(); i++) {
+				if (g.name(i) == null) // skip deleted cities.
+					continue;
+
+				tripsWithin(g, i, budget, tripSet, probe, guard);
+			}
+			if (guard.stopped())
+				probe.truncated();
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+
+		return tripSet;
+	}
+
+	/**
+	 * delete a given non-stop route from the Airline's schedule. Both directions
+	 * of the route have to be deleted.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @return true if the route is deleted successfully and false if no route
+	 *         existed between the two cities
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public boolean deleteRoute(String source, String destination)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.DELETE_ROUTE);
+		try {
+			synchronized (writeLock) {
+				Digraph next = G.edit();
+
+				// check if any of the cities are not found in Airline system.
+				int s = indexOf(next, source);
+				int d = indexOf(next, destination);
+
+				if (!next.deleteEdge(s, d))
+					return false;
+
+				publish(next);
+				return true;
+			}
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * returns the non-stop route between two cities, if any. The lookup is a
+	 * single hash probe into the source city's adjacency, so it can be used to
+	 * check whether a non-stop exists or to read its fare.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @return the Route out of source into destination, or null if no non-stop
+	 *         route exists between the two cities
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public Route retrieveDirectRoute(String source, String destination)
+			throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.RETRIEVE_DIRECT_ROUTE);
+		Digraph g = pin();
+		try {
+			return g.route(indexOf(g, source), indexOf(g, destination));
+		} finally {
+			unpin(g);
+			probe.done();
+		}
+	}
+
+	/**
+	 * delete a given city and all non-stop routes out of and into the city from
+	 * the Airline schedule. Only the city's neighbours are touched: its index is
+	 * left as an empty slot for a later addCity to reuse, and the other cities
+	 * keep their indices until the slots are compacted.
+	 * 
+	 * @param city the String city name
+	 * @throws CityNotFoundException if the city is not found in the Airline system
+	 */
+	public void deleteCity(String city) throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.DELETE_CITY);
+		try {
+			synchronized (writeLock) {
+				Digraph next = G.edit();
+
+				// check if any of the cities are not found in Airline system.
+				int cityToDelete = indexOf(next, city);// get the index of the city to delete.
+
+				next.deleteVertex(cityToDelete);
+				publish(next);
+			}
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * adds a city with no routes to the Airline system, reusing the slot of a
+	 * deleted city if there is one.
+	 * 
+	 * @param city the String city name
+	 * @return true if the city was added and false if it already existed
+	 */
+	public boolean addCity(String city) {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.ADD_CITY);
+		try {
+			synchronized (writeLock) {
+				Digraph next = G.edit();
+				if (next.indexOf(city) != -1)
+					return false;
+
+				next.addVertex(city);
+				publish(next);
+				return true;
+			}
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * adds a non-stop route in both directions between two cities, replacing
+	 * the route between them if there already was one.
+	 * 
+	 * @param source      the String source city name
+	 * @param destination the String destination city name
+	 * @param distance    the distance in miles
+	 * @param price       the price in dollars
+	 * @return true if the route is new and false if it replaced a route
+	 * @throws CityNotFoundException if any of the two cities are not found in the
+	 *                               Airline system
+	 */
+	public boolean addRoute(String source, String destination, int distance,
+			double price) throws CityNotFoundException {
+		AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.ADD_ROUTE);
+		try {
+			synchronized (writeLock) {
+				Digraph next = G.edit();
+				int s = indexOf(next, source);
+				int d = indexOf(next, destination);
+				if (s == d)
+					throw new IllegalArgumentException("A route needs two different cities: " + source);
+
+				boolean added = next.addRoute(s, d, distance, price);
+				publish(next);
+				return added;
+			}
+		} finally {
+			probe.done();
+		}
+	}
+
+	/**
+	 * starts a batch of schedule changes. The changes are only recorded until
+	 * the batch is committed, and are then applied together to a single new
+	 * version of the schedule, so the MSTs and other structures derived from
+	 * the schedule are invalidated once.
+	 * 
+	 * @return an empty Batch for this Airline system
+	 */
+	public Batch beginBatch() {
+		return new Batch();
+	}
+
+	// pins the published version so that it is not released while in use.
+	private Digraph pin() {
+		while (true) {
+			Digraph g = G;
+			g.pins.incrementAndGet();
+			if (g == G)
+				return g;
+
+			unpin(g); // a writer published in between; pin the newer version.
+		}
+	}
+
+	// unpins a version; the last reader of a superseded version releases it.
+	private void unpin(Digraph g) {
+		if (g.pins.decrementAndGet() == 0 && g.retired)
+			g.release();
+	}
+
+	// publishes a finished version in place of the current one. callers hold
+	// writeLock. once deleted slots outnumber the cities, a compacted copy is
+	// built in the background.
+	private void publish(Digraph next) {
+		next.freeze();
+		Digraph old = G;
+		G = next;
+		old.retire();
+
+		if (next.isSparse() && compacting.compareAndSet(false, true))
+			CompletableFuture.runAsync(this::compact);
+	}
+
+	// renumbers the cities densely without blocking readers or writers. the
+	// result is dropped if a writer published another version meanwhile, and
+	// the compaction is retried on the newer version. a compaction that fails
+	// is handed to the uncaught exception handler of its thread, which prints
+	// it by default, and is retried once the next sparse version is published.
+	private void compact() {
+		Digraph base = G;
+		Digraph compacted;
+		try {
+			compacted = base.isSparse() ? base.compacted() : null;
+		} catch (RuntimeException | Error e) {
+			compacting.set(false);
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			return;
+		}
+
+		synchronized (writeLock) {
+			compacting.set(false);
+			if (compacted != null && G == base)
+				publish(compacted);
+			else if (G.isSparse() && compacting.compareAndSet(false, true))
+				CompletableFuture.runAsync(this::compact);
+		}
+	}
+
+	// returns the vertex index of a city, or throws if it is not in the system.
+	private static int indexOf(Digraph g, String city) throws CityNotFoundException {
+		int i = g.indexOf(city);
+		if (i == -1)
+			throw new CityNotFoundException(city);
+
+		return i;
+	}
+
+	// returns the minimum spanning forest of a version, computing it first if
+	// the version does not have one yet.
+	private static Forest forest(Digraph g, boolean parallel) {
+		Forest forest = g.forest;
+		if (forest == null) {
+			forest = parallel ? g.boruvkas() : g.kruskals();
+			g.forest = forest;
+		}
+
+		return forest;
+	}
+
+	/**
+	 * What an itinerary search minimizes: the total price, the total distance
+	 * or the number of legs.
+	 */
+	public enum Metric {
+		PRICE, DISTANCE, LEGS
+	}
+
+	/**
+	 * Limits on the work of a query: how long it may run, how many vertices
+	 * its searches may settle all together (a label of paretoItineraries
+	 * counts as a vertex), and how many results it may return. A query that
+	 * reaches a limit stops and returns what it has found, marked with the
+	 * limit it reached. Limits left unset do not apply.
+	 *
+	 * Limits can be cancelled from any thread, which stops every query
+	 * running under them and any started later. The clock and the
+	 * cancellation are looked at every 256 vertices settled, so a query
+	 * overruns its time by at most that much work.
+	 */
+	public static final class Limits {
+		private long timeoutNanos = Long.MAX_VALUE;
+		private long maxSettled = Long.MAX_VALUE;
+		private int maxResults = Integer.MAX_VALUE;
+		private volatile boolean cancelled;
+
+		/**
+		 * @param timeout the most time a query may run
+		 * @param unit    the TimeUnit of timeout
+		 * @return these Limits
+		 */
+		public Limits timeout(long timeout, TimeUnit unit) {
+			if (timeout < 0)
+				throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+
+			timeoutNanos = unit.toNanos(timeout);
+			return this;
+		}
+
+		/**
+		 * @param maxSettled the most vertices the searches of a query may settle
+		 * @return these Limits
+		 */
+		public Limits maxSettled(long maxSettled) {
+			if (maxSettled < 1)
+				throw new IllegalArgumentException("maxSettled must be positive: " + maxSettled);
+
+			this.maxSettled = maxSettled;
+			return this;
+		}
+
+		/**
+		 * @param maxResults the most itineraries or trips a query may return
+		 * @return these Limits
+		 */
+		public Limits maxResults(int maxResults) {
+			if (maxResults < 1)
+				throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+
+			this.maxResults = maxResults;
+			return this;
+		}
+
+		/**
+		 * stops every query running under these limits, and any started later
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * @return true once cancel() has been called
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	/**
+	 * The limit a query stopped at, if any.
+	 */
+	public enum Truncation {
+		NONE, DEADLINE, SETTLED, RESULTS, CANCELLED
+	}
+
+	/**
+	 * The result of a query run under Limits, with the limit it stopped at.
+	 */
+	public static final class Limited<T> {
+		private final T result;
+		private final Truncation truncation;
+
+		private Limited(T result, Truncation truncation) {
+			this.result = result;
+			this.truncation = truncation;
+		}
+
+		/**
+		 * @return what the query found; all of the answer unless truncated
+		 */
+		public T result() {
+			return result;
+		}
+
+		/**
+		 * @return true if the query stopped at a limit
+		 */
+		public boolean truncated() {
+			return truncation != Truncation.NONE;
+		}
+
+		/**
+		 * @return the Truncation naming the limit the query stopped at
+		 */
+		public Truncation truncation() {
+			return truncation;
+		}
+	}
+
+	/**
+	 * A table of the cheapest fares from a list of source cities (the rows) to
+	 * a list of destination cities (the columns), as built by fareTable.
+	 */
+	public static final class FareTable {
+		private final List<String> sources;
+		private final List<String> destinations;
+		private final long[] cents; // cents[i * columns + j] = fare of row i, column j, or -1.
+		private final ArrayList<Route>[] paths; // null unless paths were asked for.
+
+		private FareTable(List<String> sources, List<String> destinations, long[] cents,
+				ArrayList<Route>[] paths) {
+			this.sources = Collections.unmodifiableList(sources);
+			this.destinations = Collections.unmodifiableList(destinations);
+			this.cents = cents;
+			this.paths = paths;
+		}
+
+		/**
+		 * @return the List<String> of source cities, one per row
+		 */
+		public List<String> sources() {
+			return sources;
+		}
+
+		/**
+		 * @return the List<String> of destination cities, one per column
+		 */
+		public List<String> destinations() {
+			return destinations;
+		}
+
+		/**
+		 * returns the cheapest fare from the source of a row to the destination
+		 * of a column
+		 *
+		 * @param row    the index of the source city
+		 * @param column the index of the destination city
+		 * @return the fare, 0 when both are the same city, or
+		 *         Double.POSITIVE_INFINITY when no itinerary connects them
+		 */
+		public double fare(int row, int column) {
+			long c = cents[row * destinations.size() + column];
+			return (c == -1) ? Double.POSITIVE_INFINITY : c / 100.0;
+		}
+
+		/**
+		 * returns one cheapest path from the source of a row to the destination
+		 * of a column
+		 *
+		 * @param row    the index of the source city
+		 * @param column the index of the destination city
+		 * @return an ArrayList<Route> of Route objects, empty when both are the
+		 *         same city, or null when no itinerary connects them or the table
+		 *         was built without paths
+		 */
+		public ArrayList<Route> path(int row, int column) {
+			ArrayList<Route> path = (paths == null) ? null : paths[row * destinations.size() + column];
+			return (path == null) ? null : new ArrayList<Route>(path);
+		}
+	}
+
+	/**
+	 * A batch of schedule changes, applied all-or-nothing by commit(). The
+	 * changes are applied in the order they were recorded, so a batch may, for
+	 * example, add a city and then a route to it, but deleting a route of a city
+	 * deleted earlier in the same batch fails the whole batch.
+	 */
+	public final class Batch {
+		private static final int DELETE_ROUTE = 0;
+		private static final int DELETE_CITY = 1;
+		private static final int ADD_CITY = 2;
+		private static final int ADD_ROUTE = 3;
+
+		private final ArrayList<Change> changes = new ArrayList<Change>();
+		private boolean committed;
+
+		private Batch() {
+		}
+
+		/**
+		 * records the deletion of a non-stop route in both directions.
+		 * 
+		 * @param source      the String source city name
+		 * @param destination the String destination city name
+		 * @return this Batch
+		 */
+		public Batch deleteRoute(String source, String destination) {
+			return record(new Change(DELETE_ROUTE, source, destination, 0, 0));
+		}
+
+		/**
+		 * records the deletion of a city and all of its routes.
+		 * 
+		 * @param city the String city name
+		 * @return this Batch
+		 */
+		public Batch deleteCity(String city) {
+			return record(new Change(DELETE_CITY, city, null, 0, 0));
+		}
+
+		/**
+		 * records the addition of a city; adding an existing city does nothing.
+		 * 
+		 * @param city the String city name
+		 * @return this Batch
+		 */
+		public Batch addCity(String city) {
+			return record(new Change(ADD_CITY, city, null, 0, 0));
+		}
+
+		/**
+		 * records the addition (or replacement) of a non-stop route in both
+		 * directions.
+		 * 
+		 * @param source      the String source city name
+		 * @param destination the String destination city name
+		 * @param distance    the distance in miles
+		 * @param price       the price in dollars
+		 * @return this Batch
+		 */
+		public Batch addRoute(String source, String destination, int distance,
+				double price) {
+			if (source.equals(destination))
+				throw new IllegalArgumentException("A route needs two different cities: " + source);
+
+			return record(new Change(ADD_ROUTE, source, destination, distance, price));
+		}
+
+		/**
+		 * returns the number of changes recorded so far.
+		 * 
+		 * @return the number of recorded changes
+		 */
+		public int size() {
+			return changes.size();
+		}
+
+		/**
+		 * applies every recorded change in one pass to a new version of the
+		 * schedule and publishes it, so the derived structures are invalidated
+		 * once. If any change names a city that does not exist at that point of
+		 * the batch, the new version is dropped and nothing is applied.
+		 * 
+		 * @return the number of routes deleted by the recorded route deletions
+		 * @throws CityNotFoundException if a change names a missing city
+		 */
+		public int commit() throws CityNotFoundException {
+			AirlineMetrics.Probe probe = metrics.start(AirlineMetrics.Op.COMMIT_BATCH);
+			try {
+				synchronized (writeLock) {
+					if (committed)
+						throw new IllegalStateException("Batch already committed");
+
+					Digraph next = G.edit();
+					int deleted = 0;
+					for (Change c : changes) {
+						switch (c.kind) {
+							case DELETE_ROUTE:
+								if (next.deleteEdge(indexOf(next, c.source), indexOf(next, c.destination)))
+									deleted++;
+								break;
+							case DELETE_CITY:
+								next.deleteVertex(indexOf(next, c.source));
+								break;
+							case ADD_CITY:
+								if (next.indexOf(c.source) == -1)
+									next.addVertex(c.source);
+								break;
+							default:
+								next.addRoute(indexOf(next, c.source), indexOf(next, c.destination),
+										c.distance, c.price);
+						}
+					}
+
+					committed = true;
+					if (!changes.isEmpty())
+						publish(next);
+
+					return deleted;
+				}
+			} finally {
+				probe.done();
+			}
+		}
+
+		private Batch record(Change change) {
+			if (committed)
+				throw new IllegalStateException("Batch already committed");
+
+			changes.add(change);
+			return this;
+		}
+	}
+
+	/*
+	 * private inner class to represent the city names of one graph version as
+	 * an unmodifiable set, in slot order.
+	 */
+	private static class CityNames extends AbstractSet<String> {
+		private final Digraph g;
+
+		public CityNames(Digraph g) {
+			this.g = g;
+		}
+
+		public int size() {
+			return g.size();
+		}
+
+		public boolean contains(Object o) {
+			return (o instanceof String) && g.indexOf((String) o) != -1;
+		}
+
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int i = skip(0);
+
+				public boolean hasNext() {
+					return i < g.slots();
+				}
+
+				public String next() {
+					if (i >= g.slots())
+						throw new NoSuchElementException();
+
+					String name = g.name(i);
+					i = skip(i + 1);
+					return name;
+				}
+			};
+		}
+
+		// returns the first slot at or after i that holds a city.
+		private int skip(int i) {
+			while (i < g.slots() && g.name(i) == null)
+				i++;
+
+			return i;
+		}
+	}
+
+	/*
+	 * private inner class to represent the routes out of one city of a graph
+	 * version as an unmodifiable set, each read out of that city.
+	 */
+	private static class DirectRoutes extends AbstractSet<Route> {
+		private final Digraph g;
+		private final String city;
+		private final Edges edges;
+
+		public DirectRoutes(Digraph g, int i) {
+			this.g = g;
+			city = g.name(i);
+			edges = g.adj(i);
+		}
+
+		public int size() {
+			return edges.size();
+		}
+
+		// looks the route up by its destination instead of scanning.
+		public boolean contains(Object o) {
+			if (!(o instanceof Route))
+				return false;
+
+			Route r = (Route) o;
+			int d = g.indexOf(r.destination);
+			return r.source.equals(city) && d != -1 && r.equals(edges.get(d));
+		}
+
+		public Iterator<Route> iterator() {
+			return new Iterator<Route>() {
+				private int k = skip(0);
+
+				public boolean hasNext() {
+					return k < edges.end();
+				}
+
+				public Route next() {
+					if (k >= edges.end())
+						throw new NoSuchElementException();
+
+					Route r = edges.route(k);
+					k = skip(k + 1);
+					return r.from(city);
+				}
+			};
+		}
+
+		// returns the first position at or after k that holds a route.
+		private int skip(int k) {
+			while (k < edges.end() && !edges.has(k))
+				k++;
+
+			return k;
+		}
+	}
+
+	/*
+	 * private inner class to represent one change recorded in a Batch.
+	 */
+	private static class Change {
+		private final int kind;
+		private final String source;
+		private final String destination;
+		private final int distance;
+		private final double price;
+
+		public Change(int kind, String source, String destination, int distance,
+				double price) {
+			this.kind = kind;
+			this.source = source;
+			this.destination = destination;
+			this.distance = distance;
+			this.price = price;
+		}
+	}
+
+
+	/*
+	 * private inner class to represent one version of the route graph. A
+	 * published version is never modified: edit() returns a writable copy that
+	 * shares the city names, the name index and every adjacency table, and
+	 * copies a segment or a table only the first time the writer changes it.
+	 */
+	private static class Digraph {
+		private static final AtomicLong STAMPS = new AtomicLong(); // version stamps.
+		private final long stamp; // marks the tables this version may write to.
+		private boolean writable; // false once the version is published.
+		private int v; // number of vertex slots, including deleted ones.
+		private int e; // number of edges.
+		private int live; // number of cities not deleted.
+		private Segments<String> names; // names.get(i) = city i, null if deleted.
+		private Segments<Adjacency> adj; // adjacency list, indexed by destination.
+		private IntSegments index; // hash table of city index + 1, 0 empty, -1 deleted.
+		private int indexUsed; // number of non-empty slots in index.
+		private FreeSlot free; // stack of deleted vertex slots.
+		private OffHeapGraph offHeap; // routes of the vertices without an adj entry, or null.
+
+		final AtomicInteger pins = new AtomicInteger(); // number of readers.
+		volatile boolean retired; // a newer version has been published.
+		volatile Set<Set<Route>> msts; // MSTs of this version, null until needed.
+		volatile Forest forest; // minimum spanning forest, null until needed.
+
+		// contructor for an empty, writable Digraph object
+		public Digraph() {
+			stamp = STAMPS.incrementAndGet();
+			writable = true;
+			names = new Segments<String>();
+			adj = new Segments<Adjacency>();
+			index = new IntSegments(0);
+		}
+
+		// contructor for a writable graph over routes stored off the heap. a
+		// vertex only gets an adjacency table on the heap once a writer changes
+		// its routes.
+		public Digraph(OffHeapGraph offHeap) {
+			this();
+			this.offHeap = offHeap;
+			for (int i = 0; i < offHeap.slots(); i++) {
+				names.add(offHeap.name(i));
+				adj.add(null);
+			}
+
+			v = offHeap.slots();
+			live = v;
+			e = offHeap.entries();
+			reindex(Math.max(16, Integer.highestOneBit(live + 1) * 4));
+		}
+
+		// contructor for a writable copy of a published version
+		private Digraph(Digraph base) {
+			stamp = STAMPS.incrementAndGet();
+			writable = true;
+			v = base.v;
+			e = base.e;
+			live = base.live;
+			names = new Segments<String>(base.names);
+			adj = new Segments<Adjacency>(base.adj);
+			index = new IntSegments(base.index);
+			indexUsed = base.indexUsed;
+			free = base.free;
+			offHeap = base.offHeap;
+
+			// keep the forest up to date from now on, rather than recompute it.
+			Forest f = base.forest;
+			forest = (f == null) ? null : new Forest(f);
+		}
+
+		// returns a writable copy of this version.
+		public Digraph edit() {
+			return new Digraph(this);
+		}
+
+		// ends writing; the version may be published after this.
+		public void freeze() {
+			writable = false;
+			names.freeze();
+			adj.freeze();
+			index.freeze();
+			if (forest != null)
+				forest.freeze(this);
+		}
+
+		// marks this version as superseded.
+		public void retire() {
+			retired = true;
+			if (pins.get() == 0)
+				release();
+		}
+
+		// drops what this version holds for its own readers only. its segments
+		// and tables may still be shared with newer versions, so those are left
+		// to the garbage collector.
+		public void release() {
+			msts = null;
+			forest = null;
+		}
+
+		// number of vertex slots, including deleted ones.
+		public int slots() {
+			return v;
+		}
+
+		// number of cities.
+		public int size() {
+			return live;
+		}
+
+		// returns the name of city i, or null if it was deleted.
+		public String name(int i) {
+			return names.get(i);
+		}
+
+		// returns the routes out of vertex i, wherever they are stored.
+		public Edges adj(int i) {
+			Adjacency edges = adj.get(i);
+			return (edges != null) ? edges : offHeap.edges(i);
+		}
+
+		// returns the route from source to destination, or null if there is none.
+		public Route route(int source, int destination) {
+			Route r = adj(source).get(destination);
+			return (r == null) ? null : r.from(names.get(source));
+		}
+
+		// returns the price in cents of the route from source to destination,
+		// which must exist, without creating a Route for it.
+		public long cents(int source, int destination) {
+			Edges edges = adj(source);
+			return edges.cents(edges.indexOf(destination));
+		}
+
+		// once deleted slots outnumber the cities, a compacted copy pays off.
+		public boolean isSparse() {
+			return v - live > Math.max(32, live);
+		}
+
+		// returns the index of a city, or -1 if it is not in this version.
+		public int indexOf(String city) {
+			int mask = index.length() - 1;
+			if (mask < 0)
+				return -1;
+
+			for (int slot = hash(city) & mask;; slot = (slot + 1) & mask) {
+				int entry = index.get(slot);
+				if (entry == 0)
+					return -1;
+
+				if (entry > 0 && names.get(entry - 1).equals(city))
+					return entry - 1;
+			}
+		}
+
+		// function to add a vertex for a city that is not in the graph yet;
+		// returns a freed slot if there is one.
+		public int addVertex(String city) {
+			checkWritable();
+
+			int i;
+			if (free != null) {
+				i = free.slot;
+				free = free.next;
+				names.set(i, city);
+				adj.set(i, new Adjacency(stamp));
+			} else {
+				i = v++;
+				names.add(city);
+				adj.add(new Adjacency(stamp));
+				if (forest != null)
+					forest.addVertex();
+			}
+
+			live++;
+			indexPut(city, i);
+			return i;
+		}
+
+		// function to delete a vertex and its routes in both directions. only the
+		// vertex's neighbours are visited; its slot is pushed on the free stack.
+		public void deleteVertex(int vertexToDelete) {
+			checkWritable();
+
+			Edges edges = adj(vertexToDelete);
+			for (int i = 0; i < edges.end(); i++) {
+				if (!edges.has(i))
+					continue;
+
+				writableAdj(edges.target(i)).remove(vertexToDelete);
+				e -= 2;
+			}
+
+			indexRemove(names.get(vertexToDelete));
+			names.set(vertexToDelete, null);
+			adj.set(vertexToDelete, new Adjacency(stamp));
+			if (forest != null) {
+				forest.vertexDeleted(this, vertexToDelete);
+				checkForest();
+			}
+			free = new FreeSlot(vertexToDelete, free);
+			live--;
+		}
+
+		/**
+		 * Add a route in both directions between vertices s and d. A second route
+		 * between the same two vertices replaces the first one. Both directions
+		 * share one Route object.
+		 */
+		public boolean addRoute(int s, int d, int distance, double price) {
+			checkWritable();
+
+			Route route = new Route(names.get(s), names.get(d), distance, price);
+			Route old = addEdge(s, d, route);
+			addEdge(d, s, route);
+			if (forest != null) {
+				forest.routeAdded(this, s, d, (old == null) ? Long.MAX_VALUE : old.cents);
+				checkForest();
+			}
+			return old == null;
+		}
+
+		// adds the route from vertex "from" to vertex "to"; returns the route
+		// it replaced, if any.
+		private Route addEdge(int from, int to, Route route) {
+			Route old = writableAdj(from).put(to, route);
+			if (old == null)
+				e++;
+
+			return old;
+		}
+
+		// function to delete an edge given a source and destination.
+		public boolean deleteEdge(int source, int destination) {
+			checkWritable();
+
+			// remove the route from the graph departing from "source".
+			if (adj(source).indexOf(destination) == -1)
+				return false;
+
+			writableAdj(source).remove(destination);
+			e--;
+
+			// remove the route from the graph departing from "destination".
+			if (writableAdj(destination).remove(source) != null)
+				e--;
+
+			if (forest != null) {
+				forest.routeDeleted(this, source, destination);
+				checkForest();
+			}
+			return true;
+		}
+
+		// returns a new version holding the same cities and routes with the
+		// deleted slots squeezed out. a graph stored off the heap is stored off
+		// the heap again, which also moves the routes edited since back there.
+		public Digraph compacted() {
+			int[] newIds = new int[v];
+			int n = 0;
+			for (int i = 0; i < v; i++)
+				newIds[i] = (names.get(i) == null) ? -1 : n++;
+
+			Digraph compacted;
+			if (offHeap != null) {
+				compacted = new Digraph(OffHeapGraph.of(this));
+			} else {
+				compacted = new Digraph();
+				for (int i = 0; i < v; i++)
+					if (newIds[i] != -1)
+						compacted.addVertex(names.get(i));
+
+				for (int i = 0; i < v; i++) {
+					if (newIds[i] == -1)
+						continue;
+
+					Edges edges = adj(i);
+					Adjacency copy = compacted.adj.get(newIds[i]);
+					for (int j = 0; j < edges.end(); j++)
+						if (edges.has(j))
+							copy.put(newIds[edges.target(j)], edges.route(j));
+				}
+			}
+
+			compacted.e = e;
+			compacted.msts = msts; // the MSTs do not depend on the numbering.
+			Forest f = forest;
+			if (f != null)
+				compacted.forest = f.renumbered(compacted, newIds, compacted.v);
+			return compacted;
+		}
+
+		// returns the adjacency of vertex i, copying it first if an older version
+		// shares it.
+		private Adjacency writableAdj(int i) {
+			Adjacency edges = adj.get(i);
+			if (edges == null) { // move the routes of i onto the heap.
+				edges = new Adjacency(stamp);
+				Edges stored = offHeap.edges(i);
+				for (int j = 0; j < stored.end(); j++)
+					edges.put(stored.target(j), stored.route(j));
+
+				adj.set(i, edges);
+			} else if (edges.stamp != stamp) {
+				edges = new Adjacency(edges, stamp);
+				adj.set(i, edges);
+			}
+
+			return edges;
+		}
+
+		private void checkWritable() {
+			if (!writable)
+				throw new IllegalStateException("Published graph versions are read-only");
+		}
+
+		// drops the forest once keeping it up to date has cost more than
+		// computing it again would; the next query that needs it recomputes it.
+		private void checkForest() {
+			if (forest.work() > 2L * (v + e))
+				forest = null;
+		}
+
+		// adds city -> i to the name index, growing it when it is half full.
+		// the city must already be stored in names.
+		private void indexPut(String city, int i) {
+			if (2 * (indexUsed + 1) > index.length()) {
+				reindex(Math.max(16, Integer.highestOneBit(live + 1) * 4));
+				return;
+			}
+
+			int mask = index.length() - 1;
+			int slot = hash(city) & mask;
+			while (index.get(slot) > 0)
+				slot = (slot + 1) & mask;
+
+			if (index.get(slot) == 0)
+				indexUsed++;
+
+			index.set(slot, i + 1);
+		}
+
+		// replaces the entry of city with a deleted marker.
+		private void indexRemove(String city) {
+			int i = indexOf(city);
+			int mask = index.length() - 1;
+			int slot = hash(city) & mask;
+			while (index.get(slot) != i + 1)
+				slot = (slot + 1) & mask;
+
+			index.set(slot, -1);
+		}
+
+		// rebuilds the name index with the given power-of-two capacity, dropping
+		// the deleted markers.
+		private void reindex(int capacity) {
+			index = new IntSegments(capacity);
+			indexUsed = 0;
+			for (int i = 0; i < v; i++)
+				if (names.get(i) != null) {
+					int mask = capacity - 1;
+					int slot = hash(names.get(i)) & mask;
+					while (index.get(slot) != 0)
+						slot = (slot + 1) & mask;
+
+					index.set(slot, i + 1);
+					indexUsed++;
+				}
+		}
+
+		private static int hash(String city) {
+			int h = city.hashCode() * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		// Kruskal's algorithm over every route, returning one MST per connected
+		// component (a minimum spanning forest). The routes are copied once into
+		// primitive arrays and radix sorted by price in cents.
+		public Forest kruskals() {
+			if (this.v == 0)
+				return new Forest(this, new RouteList(0), new int[0], 0, null);
+
+			RouteList routes = routeList(false);
+			UF UF = new UF(this.v); // create a union-find data structure.
+			int[] order = sortByKey(routes.cents, routes.size);
+			int[] tree = new int[Math.max(0, live - 1)]; // routes added to an MST.
+			int treeEdges = 0;
+
+			// unify all vertices to a component
+			// starting with vertices connecting the min edges.
+			for (int k = 0; k < routes.size && treeEdges < tree.length; k++) {
+				int p = routes.from[order[k]]; // get index of source.
+				int q = routes.to[order[k]]; // get index of destination.
+
+				if (!UF.isConnected(p, q)) // if the two components are not connected:
+				{
+					UF.unify(p, q); // unify both components into one.
+					tree[treeEdges++] = order[k]; // add that edge to MST
+				}
+			}
+
+			return new Forest(this, routes, tree, treeEdges, UF);
+		}
+
+		// Boruvka's algorithm, returning the same forest as kruskals() (ties on
+		// price are broken by extraction order in both). Every round finds the
+		// cheapest route out of each component in parallel, then merges the
+		// components through UF, so the number of components at least halves.
+		// Finds run concurrently only between rounds of unions; path compression
+		// then only ever writes a vertex's root, which is safe to race on.
+		public Forest boruvkas() {
+			if (this.v == 0)
+				return new Forest(this, new RouteList(0), new int[0], 0, null);
+
+			RouteList routes = routeList(true);
+			int[] from = routes.from;
+			int[] to = routes.to;
+			long[] cents = routes.cents;
+			UF UF = new UF(this.v);
+			AtomicIntegerArray cheapest = new AtomicIntegerArray(this.v); // cheapest route out of each root.
+			int[] tree = new int[Math.max(0, live - 1)]; // routes added to an MST.
+			int treeEdges = 0;
+
+			// the components still to be merged, and the routes between them.
+			int[] roots = IntStream.range(0, this.v).filter(i -> names.get(i) != null).toArray();
+			int[] active = IntStream.range(0, routes.size).toArray();
+
+			while (active.length > 0) {
+				for (int root : roots)
+					cheapest.set(root, -1);
+
+				Arrays.stream(active).parallel().forEach(k -> {
+					int p = UF.find(from[k]);
+					int q = UF.find(to[k]);
+					if (p != q) {
+						offer(cheapest, cents, p, k);
+						offer(cheapest, cents, q, k);
+					}
+				});
+
+				// add each component's cheapest route, unless a route merged in
+				// this round already joined the two ends.
+				for (int root : roots) {
+					int k = cheapest.get(root);
+					if (k != -1 && !UF.isConnected(from[k], to[k])) {
+						UF.unify(from[k], to[k]);
+						tree[treeEdges++] = k;
+					}
+				}
+
+				roots = Arrays.stream(roots).parallel().filter(r -> UF.find(r) == r).toArray();
+				active = Arrays.stream(active).parallel()
+						.filter(k -> UF.find(from[k]) != UF.find(to[k])).toArray();
+			}
+
+			return new Forest(this, routes, tree, treeEdges, UF);
+		}
+
+		// makes route k the cheapest route out of root if it beats the current one.
+		private static void offer(AtomicIntegerArray cheapest, long[] cents, int root, int k) {
+			while (true) {
+				int current = cheapest.get(root);
+				if (current != -1 && (cents[current] < cents[k]
+						|| (cents[current] == cents[k] && current < k)))
+					return;
+
+				if (cheapest.compareAndSet(root, current, k))
+					return;
+			}
+		}
+
+		// splits the vertices into k shards of about equal size, returning the
+		// shard of each vertex (-1 for an empty slot).
+		public int[] partition(int k) {
+			int[] id = new int[this.v]; // id[i] = the Partitioner vertex of i.
+			int n = 0;
+			for (int i = 0; i < this.v; i++)
+				id[i] = (names.get(i) != null) ? n++ : -1;
+
+			RouteList routes = routeList(false);
+			int[] from = new int[routes.size];
+			int[] to = new int[routes.size];
+			for (int r = 0; r < routes.size; r++) {
+				from[r] = id[routes.from[r]];
+				to[r] = id[routes.to[r]];
+			}
+
+			int[] part = new Partitioner(n, from, to).partition(k);
+			int[] shard = new int[this.v];
+			for (int i = 0; i < this.v; i++)
+				shard[i] = (id[i] == -1) ? -1 : part[id[i]];
+			return shard;
+		}
+
+		// copies each route once, from its lower-indexed end, into primitive
+		// arrays, scanning the vertices in parallel if asked to. the order is the
+		// same either way.
+		private RouteList routeList(boolean parallel) {
+			int[] start = new int[this.v + 1]; // start[i + 1] = routes extracted from vertex i.
+			IntStream vertices = IntStream.range(0, this.v);
+			(parallel ? vertices.parallel() : vertices).forEach(i -> {
+				Edges edges = adj(i);
+				for (int j = 0; j < edges.end(); j++)
+					if (edges.has(j) && edges.target(j) > i) // skip deleted routes and the reverse direction.
+						start[i + 1]++;
+			});
+
+			for (int i = 0; i < this.v; i++)
+				start[i + 1] += start[i];
+
+			RouteList routes = new RouteList(start[this.v]);
+			vertices = IntStream.range(0, this.v);
+			(parallel ? vertices.parallel() : vertices).forEach(i -> {
+				Edges edges = adj(i);
+				int k = start[i];
+				for (int j = 0; j < edges.end(); j++) {
+					if (!edges.has(j) || edges.target(j) < i)
+						continue;
+
+					routes.from[k] = i;
+					routes.to[k] = edges.target(j);
+					routes.cents[k++] = edges.cents(j);
+				}
+			});
+
+			return routes;
+		}
+
+		// returns the indices 0..n-1 ordered by keys[i], ties in index order,
+		// using an LSD radix sort with 11-bit digits.
+		private static int[] sortByKey(long[] keys, int n) {
+			int[] order = new int[n];
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+				min = Math.min(min, keys[i]);
+				max = Math.max(max, keys[i]);
+			}
+
+			int[] sorted = new int[n];
+			int[] count = new int[1 << 11];
+			for (int shift = 0; n > 1 && shift < 64 && ((max - min) >>> shift) != 0; shift += 11) {
+				Arrays.fill(count, 0);
+				for (int i = 0; i < n; i++)
+					count[(int) (((keys[order[i]] - min) >>> shift) & 2047)]++;
+
+				for (int b = 1; b < count.length; b++)
+					count[b] += count[b - 1];
+
+				for (int i = n - 1; i >= 0; i--)
+					sorted[--count[(int) (((keys[order[i]] - min) >>> shift) & 2047)]] = order[i];
+
+				int[] swap = order;
+				order = sorted;
+				sorted = swap;
+			}
+
+			return order;
+		}
+	}
+
+	/*
+	 * private inner class to represent the routes of a graph version as
+	 * parallel primitive arrays, each undirected route once.
+	 */
+	private static class RouteList {
+		private final int size;
+		private final int[] from; // from[k] = lower-indexed end of route k.
+		private final int[] to; // to[k] = other end of route k.
+		private final long[] cents; // cents[k] = price of route k in cents.
+
+		public RouteList(int size) {
+			this.size = size;
+			from = new int[size];
+			to = new int[size];
+			cents = new long[size];
+		}
+	}
+
+	/*
+	 * private inner class to split a graph into shards of about equal size
+	 * cutting few routes, over several levels. The vertices are clustered by
+	 * label propagation, each joining the cluster most of its routes lead to
+	 * while clusters stay small, and every cluster is contracted into one
+	 * vertex, until the graph is small enough to split directly: the shards
+	 * grow breadth first from seeds spread apart, the smallest shard taking
+	 * the next vertex each time. Then, level by level back to the cities,
+	 * vertices move to the shard they have the most routes to, while no shard
+	 * grows past 3% above its share. A hub and its spokes fall into one
+	 * cluster and so move between shards together, which moving single cities
+	 * cannot do.
+	 */
+	private static class Partitioner {
+		private final int n; // number of vertices.
+		private final int[] first; // the edges of vertex u are first[u] to first[u + 1] - 1.
+		private final int[] target;
+		private final int[] routes; // routes[e] = number of routes edge e stands for.
+		private final int[] cities; // cities[u] = number of cities vertex u stands for.
+		private final int total; // number of cities.
+
+		// a graph of a vertex per city, from its routes given once each.
+		public Partitioner(int n, int[] from, int[] to) {
+			this.n = n;
+			this.total = n;
+			first = new int[n + 1];
+			for (int k = 0; k < from.length; k++) {
+				first[from[k] + 1]++;
+				first[to[k] + 1]++;
+			}
+			for (int u = 0; u < n; u++)
+				first[u + 1] += first[u];
+
+			target = new int[first[n]];
+			routes = new int[first[n]];
+			Arrays.fill(routes, 1);
+			int[] next = Arrays.copyOf(first, n);
+			for (int k = 0; k < from.length; k++) {
+				target[next[from[k]]++] = to[k];
+				target[next[to[k]]++] = from[k];
+			}
+			cities = new int[n];
+			Arrays.fill(cities, 1);
+		}
+
+		private Partitioner(int n, int[] first, int[] target, int[] routes, int[] cities,
+				int total) {
+			this.n = n;
+			this.first = first;
+			this.target = target;
+			this.routes = routes;
+			this.cities = cities;
+			this.total = total;
+		}
+
+		// returns the shard of each vertex, from 0 to k - 1.
+		public int[] partition(int k) {
+			if (n <= 20 * k)
+				return refine(grow(k), k);
+
+			int[] cluster = cluster(Math.max(1, total / (20 * k)));
+			int clusters = 0;
+			for (int u = 0; u < n; u++)
+				clusters = Math.max(clusters, cluster[u] + 1);
+			if (clusters > 0.9 * n) // the graph hardly shrinks any more.
+				return refine(grow(k), k);
+
+			int[] coarse = contract(cluster, clusters).partition(k);
+			int[] shard = new int[n];
+			for (int u = 0; u < n; u++)
+				shard[u] = coarse[cluster[u]];
+			return refine(shard, k);
+		}
+
+		// label propagation over the vertices in order of degree, in a few
+		// rounds, with clusters of at most max cities; returns the cluster of
+		// each vertex, numbered from 0.
+		private int[] cluster(int max) {
+			int[] label = new int[n];
+			int[] size = new int[n];
+			long[] degree = new long[n];
+			for (int u = 0; u < n; u++) {
+				label[u] = u;
+				size[u] = cities[u];
+				degree[u] = first[u + 1] - first[u];
+			}
+			int[] order = Digraph.sortByKey(degree, n);
+
+			int[] count = new int[n];
+			int[] touched = new int[n];
+			for (int round = 0; round < 3; round++) {
+				for (int u : order) {
+					int t = 0;
+					for (int e = first[u]; e < first[u + 1]; e++) {
+						int l = label[target[e]];
+						if (count[l] == 0)
+							touched[t++] = l;
+						count[l] += routes[e];
+					}
+
+					int best = label[u];
+					for (int i = 0; i < t; i++) {
+						int l = touched[i];
+						if (count[l] > count[best] && size[l] + cities[u] <= max)
+							best = l;
+					}
+					for (int i = 0; i < t; i++)
+						count[touched[i]] = 0;
+
+					if (best != label[u]) {
+						size[label[u]] -= cities[u];
+						size[best] += cities[u];
+						label[u] = best;
+					}
+				}
+			}
+
+			int[] number = new int[n];
+			Arrays.fill(number, -1);
+			int clusters = 0;
+			for (int u = 0; u < n; u++) {
+				if (number[label[u]] == -1)
+					number[label[u]] = clusters++;
+				label[u] = number[label[u]];
+			}
+			return label;
+		}
+
+		// the graph with each cluster as one vertex, and the routes between two
+		// clusters as one edge.
+		private Partitioner contract(int[] cluster, int clusters) {
+			int[] start = new int[clusters + 1]; // the vertices of cluster c, in members.
+			int[] size = new int[clusters];
+			for (int u = 0; u < n; u++) {
+				start[cluster[u] + 1]++;
+				size[cluster[u]] += cities[u];
+			}
+			for (int c = 0; c < clusters; c++)
+				start[c + 1] += start[c];
+			int[] members = new int[n];
+			int[] next = Arrays.copyOf(start, clusters);
+			for (int u = 0; u < n; u++)
+				members[next[cluster[u]]++] = u;
+
+			int[] first = new int[clusters + 1];
+			int[] target = new int[this.target.length];
+			int[] routes = new int[this.target.length];
+			int[] count = new int[clusters];
+			int[] touched = new int[clusters];
+			int m = 0;
+			for (int c = 0; c < clusters; c++) {
+				first[c] = m;
+				int t = 0;
+				for (int i = start[c]; i < start[c + 1]; i++) {
+					int u = members[i];
+					for (int e = this.first[u]; e < this.first[u + 1]; e++) {
+						int d = cluster[this.target[e]];
+						if (d == c)
+							continue;
+
+						if (count[d] == 0)
+							touched[t++] = d;
+						count[d] += this.routes[e];
+					}
+				}
+				for (int i = 0; i < t; i++) {
+					target[m] = touched[i];
+					routes[m++] = count[touched[i]];
+					count[touched[i]] = 0;
+				}
+			}
+			first[clusters] = m;
+
+			return new Partitioner(clusters, first, Arrays.copyOf(target, m),
+					Arrays.copyOf(routes, m), size, total);
+		}
+
+		// grows k shards breadth first from seeds spread apart in number of
+		// edges, each seed the vertex farthest from those chosen so far, a
+		// vertex they cannot reach counting as farthest. A shard walled in by
+		// the others restarts from the lowest vertex left.
+		private int[] grow(int k) {
+			int[] shard = new int[n];
+			Arrays.fill(shard, -1);
+			if (n == 0)
+				return shard;
+
+			int[] seeds = new int[k];
+			int[] hops = new int[n];
+			int[] queue = new int[n];
+			Arrays.fill(hops, Integer.MAX_VALUE);
+			int next = 0;
+			for (int j = 0; j < k; j++) {
+				seeds[j] = next;
+				hops[next] = 0;
+				int head = 0;
+				int tail = 0;
+				queue[tail++] = next;
+				while (head < tail) {
+					int u = queue[head++];
+					for (int e = first[u]; e < first[u + 1]; e++) {
+						if (hops[target[e]] > hops[u] + 1) {
+							hops[target[e]] = hops[u] + 1;
+							queue[tail++] = target[e];
+						}
+					}
+				}
+				for (int u = 0; u < n; u++)
+					if (hops[u] > hops[next])
+						next = u;
+			}
+
+			int[][] frontier = new int[k][];
+			int[] head = new int[k];
+			int[] tail = new int[k];
+			int[] size = new int[k];
+			for (int j = 0; j < k; j++) {
+				frontier[j] = new int[16];
+				frontier[j][tail[j]++] = seeds[j];
+			}
+			int lowest = 0; // no vertex below is left unassigned.
+			for (int assigned = 0; assigned < n; assigned++) {
+				int j = 0;
+				for (int i = 1; i < k; i++)
+					if (size[i] < size[j])
+						j = i;
+
+				int u = -1;
+				while (head[j] < tail[j] && u == -1) {
+					u = frontier[j][head[j]++];
+					if (shard[u] != -1)
+						u = -1;
+				}
+				if (u == -1) {
+					while (shard[lowest] != -1)
+						lowest++;
+					u = lowest;
+				}
+
+				shard[u] = j;
+				size[j] += cities[u];
+				for (int e = first[u]; e < first[u + 1]; e++) {
+					if (shard[target[e]] == -1) {
+						if (tail[j] == frontier[j].length)
+							frontier[j] = Arrays.copyOf(frontier[j], 2 * tail[j]);
+						frontier[j][tail[j]++] = target[e];
+					}
+				}
+			}
+
+			return shard;
+		}
+
+		// moves vertices to the shard they have the most routes to, in passes
+		// until none moves, keeping every shard within 3% above its share.
+		private int[] refine(int[] shard, int k) {
+			int cap = (int) Math.ceil(1.03 * total / k);
+			int[] size = new int[k];
+			for (int u = 0; u < n; u++)
+				size[shard[u]] += cities[u];
+
+			int[] count = new int[k];
+			int[] touched = new int[k];
+			for (int pass = 0; pass < 10; pass++) {
+				int moved = 0;
+				for (int u = 0; u < n; u++) {
+					int own = shard[u];
+					int t = 0;
+					for (int e = first[u]; e < first[u + 1]; e++) {
+						int s = shard[target[e]];
+						if (count[s] == 0)
+							touched[t++] = s;
+						count[s] += routes[e];
+					}
+
+					int best = own;
+					for (int i = 0; i < t; i++) {
+						int s = touched[i];
+						if (count[s] > count[best] && size[s] + cities[u] <= cap)
+							best = s;
+					}
+					for (int i = 0; i < t; i++)
+						count[touched[i]] = 0;
+
+					if (best != own && size[own] > cities[u]) {
+						shard[u] = best;
+						size[own] -= cities[u];
+						size[best] += cities[u];
+						moved++;
+					}
+				}
+				if (moved == 0)
+					break;
+			}
+
+			return shard;
+		}
+	}
+
+	/*
+	 * private inner class to represent the minimum spanning forest of a graph
+	 * version, kept up to date as routes and cities are added and deleted
+	 * instead of being recomputed. Every tree has an id, and a city without
+	 * routes is in no tree, so the tree ids double as a connectivity index.
+	 * Like the graph, a copy shares its segments with the version it was made
+	 * from until it writes to them. The route sets of the trees it changed are
+	 * left to be built by msts(), so that an update costs no more than the
+	 * cities it visits, which is the work checkForest() counts.
+	 */
+	private static class Forest {
+		private static final int[] NO_LINKS = new int[0];
+		private IntSegments treeOf; // treeOf[i] = id of the tree spanning city i, -1 if none.
+		private Segments<int[]> links; // links[i] = cities joined to city i by a tree route.
+		private Segments<TreeRoutes> trees; // trees[t] = routes of tree t, null if unused.
+		private FreeSlot freeIds; // stack of unused tree ids.
+		private int size; // number of tree routes.
+		private ArrayList<Integer> touched; // cities whose tree changed; null once frozen.
+		private long work; // cities visited by the updates made to this copy.
+
+		// builds the forest of the routes tree[0..count) chosen by an MST
+		// algorithm over the routes of g, whose components are given by UF.
+		public Forest(Digraph g, RouteList routes, int[] tree, int count, UF UF) {
+			int[] degree = new int[g.slots()];
+			for (int k = 0; k < count; k++) {
+				degree[routes.from[tree[k]]]++;
+				degree[routes.to[tree[k]]]++;
+			}
+
+			treeOf = new IntSegments(g.slots());
+			links = new Segments<int[]>();
+			trees = new Segments<TreeRoutes>();
+			int[] idOf = new int[g.slots()]; // idOf[root] = id of its tree + 1.
+			ArrayList<Set<Route>> sets = new ArrayList<Set<Route>>();
+			for (int i = 0; i < g.slots(); i++) {
+				links.add(degree[i] == 0 ? NO_LINKS : new int[degree[i]]);
+				treeOf.set(i, -1);
+			}
+
+			for (int k = 0; k < count; k++) {
+				int p = routes.from[tree[k]];
+				int q = routes.to[tree[k]];
+				int root = UF.find(p);
+				if (idOf[root] == 0) {
+					sets.add(new HashSet<Route>());
+					idOf[root] = sets.size();
+				}
+
+				sets.get(idOf[root] - 1).add(g.route(p, q));
+				treeOf.set(p, idOf[root] - 1);
+				treeOf.set(q, idOf[root] - 1);
+				links.get(p)[--degree[p]] = q;
+				links.get(q)[--degree[q]] = p;
+			}
+
+			for (Set<Route> set : sets)
+				trees.add(new TreeRoutes(Collections.unmodifiableSet(set)));
+
+			size = count;
+
+			freeze(g);
+		}
+
+		// contructor for a writable copy of a frozen forest
+		public Forest(Forest base) {
+			treeOf = new IntSegments(base.treeOf);
+			links = new Segments<int[]>(base.links);
+			trees = new Segments<TreeRoutes>(base.trees);
+			freeIds = base.freeIds;
+			size = base.size;
+			touched = new ArrayList<Integer>();
+		}
+
+		// returns one unmodifiable set of routes per tree, first building the
+		// sets of the trees that changed since they were last asked for, each
+		// from the first of its cities in one pass over the cities of g.
+		public Set<Set<Route>> msts(Digraph g) {
+			for (int i = 0; i < g.slots(); i++) {
+				int t = treeOf.get(i);
+				if (t == -1 || trees.get(t).routes != null)
+					continue;
+
+				TreeSearch search = new TreeSearch(i);
+				while (search.step(links))
+					;
+
+				Set<Route> set = new HashSet<Route>();
+				for (int k = 1; k < search.tail; k++) {
+					int p = search.queue[k];
+					int q = search.queue[search.from[k]];
+					set.add(g.route(Math.min(p, q), Math.max(p, q)));
+				}
+				trees.get(t).routes = Collections.unmodifiableSet(set);
+			}
+
+			Set<Set<Route>> msts = new HashSet<Set<Route>>();
+			for (int t = 0; t < trees.length(); t++)
+				if (trees.get(t) != null)
+					msts.add(trees.get(t).routes);
+
+			return Collections.unmodifiableSet(msts);
+		}
+
+		// returns a frozen copy for a graph whose city i was renumbered to
+		// newIds[i] (-1 for a deleted city) and which has the given slots.
+		public Forest renumbered(Digraph g, int[] newIds, int slots) {
+			Forest copy = new Forest(this);
+			copy.treeOf = new IntSegments(slots);
+			copy.links = new Segments<int[]>();
+			for (int i = 0; i < slots; i++)
+				copy.links.add(NO_LINKS);
+
+			for (int i = 0; i < newIds.length; i++) {
+				if (newIds[i] == -1)
+					continue;
+
+				int[] linked = links.get(i).clone();
+				for (int k = 0; k < linked.length; k++)
+					linked[k] = newIds[linked[k]];
+
+				copy.treeOf.set(newIds[i], treeOf.get(i));
+				copy.links.set(newIds[i], linked.length == 0 ? NO_LINKS : linked);
+			}
+
+			copy.freeze(g);
+			return copy;
+		}
+
+		// gives each tree that changed a route set still to be built, which
+		// msts() builds only when asked, and ends writing.
+		public void freeze(Digraph g) {
+			if (touched != null) {
+				Set<Integer> renewed = new HashSet<Integer>();
+				for (int x : touched) {
+					int t = treeOf.get(x);
+					if (t != -1 && renewed.add(t))
+						trees.set(t, new TreeRoutes(null));
+				}
+			}
+
+			touched = null;
+			treeOf.freeze();
+			links.freeze();
+			trees.freeze();
+		}
+
+		// number of tree routes; every one joins two components into one.
+		public int size() {
+			return size;
+		}
+
+		// checks whether cities s and d are in the same component.
+		public boolean isConnected(int s, int d) {
+			int t = treeOf.get(s);
+			return s == d || (t != -1 && t == treeOf.get(d));
+		}
+
+		// number of cities visited so far by the updates to this copy.
+		public long work() {
+			return work;
+		}
+
+		// gives a new city slot no tree.
+		public void addVertex() {
+			treeOf.add(-1);
+			links.add(NO_LINKS);
+		}
+
+		// updates the forest after the route between s and d was added to g, or
+		// replaced one that cost oldCents. a new route that joins two trees
+		// merges them; one inside a tree replaces the dearest tree route on the
+		// path between s and d if it is cheaper.
+		public void routeAdded(Digraph g, int s, int d, long oldCents) {
+			long cents = g.cents(s, d);
+			if (isLinked(s, d)) {
+				touch(s);
+				if (cents > oldCents) { // a dearer tree route may have to go.
+					unlink(s, d);
+					reconnect(g, s, d);
+				}
+				return;
+			}
+
+			int ts = treeOf.get(s);
+			int td = treeOf.get(d);
+			if (ts == -1 || ts != td) {
+				join(s, d);
+				return;
+			}
+
+			// find the dearest route on the tree path from s to d.
+			TreeSearch search = new TreeSearch(s);
+			int k = search.find(d, links);
+			work += search.tail;
+			int p = -1;
+			int q = -1;
+			long max = Long.MIN_VALUE;
+			for (; search.from[k] != -1; k = search.from[k]) {
+				long c = g.cents(search.queue[k], search.queue[search.from[k]]);
+				if (c > max) {
+					max = c;
+					p = search.queue[k];
+					q = search.queue[search.from[k]];
+				}
+			}
+
+			if (cents < max) {
+				unlink(p, q);
+				link(s, d);
+				touch(s);
+			}
+		}
+
+		// updates the forest after the route between s and d was deleted from
+		// g. deleting a route outside the forest changes nothing; deleting a
+		// tree route searches the smaller of the two pieces for a replacement.
+		public void routeDeleted(Digraph g, int s, int d) {
+			if (!isLinked(s, d))
+				return;
+
+			unlink(s, d);
+			reconnect(g, s, d);
+		}
+
+		// updates the forest after every route of city x was deleted from g,
+		// cutting its tree routes one at a time.
+		public void vertexDeleted(Digraph g, int x) {
+			for (int y : links.get(x)) {
+				unlink(x, y);
+				reconnect(g, x, y);
+			}
+		}
+
+		// joins the trees of s and d (either may be in none) by their new route,
+		// relabelling the smaller tree.
+		private void join(int s, int d) {
+			int ts = treeOf.get(s);
+			int td = treeOf.get(d);
+			if (ts == -1 && td == -1) {
+				int t = newId();
+				treeOf.set(s, t);
+				treeOf.set(d, t);
+			} else if (ts == -1) {
+				treeOf.set(s, td);
+			} else if (td == -1) {
+				treeOf.set(d, ts);
+			} else {
+				int[] side = smallerSide(s, d);
+				int from = treeOf.get(side[0]);
+				int to = (from == ts) ? td : ts;
+				for (int x : side)
+					treeOf.set(x, to);
+				freeId(from);
+			}
+
+			link(s, d);
+			touch(s);
+		}
+
+		// reconnects the two pieces of the tree that lost its route between s
+		// and d with the cheapest route of g between them. if there is none,
+		// the smaller piece becomes a tree of its own.
+		private void reconnect(Digraph g, int s, int d) {
+			int[] side = smallerSide(s, d);
+			CitySet inSide = new CitySet(side);
+
+			int p = -1;
+			int q = -1;
+			long min = Long.MAX_VALUE;
+			for (int x : side) {
+				Edges edges = g.adj(x);
+				work += edges.end();
+				for (int j = 0; j < edges.end(); j++) {
+					if (edges.has(j) && !inSide.contains(edges.target(j)) && edges.cents(j) < min) {
+						min = edges.cents(j);
+						p = x;
+						q = edges.target(j);
+					}
+				}
+			}
+
+			touch(s);
+			touch(d);
+			if (p != -1) {
+				link(p, q);
+				return;
+			}
+
+			int other = (side[0] == s) ? d : s;
+			int t = treeOf.get(other);
+			int id = side.length == 1 ? -1 : newId();
+			for (int x : side)
+				treeOf.set(x, id);
+
+			if (links.get(other).length == 0) { // the rest is a single city.
+				treeOf.set(other, -1);
+				freeId(t);
+			}
+		}
+
+		// returns the cities of the smaller of the two trees holding s and d,
+		// which are not linked, starting with s or d. both trees are searched
+		// one city at a time until one of them runs out.
+		private int[] smallerSide(int s, int d) {
+			TreeSearch a = new TreeSearch(s);
+			TreeSearch b = new TreeSearch(d);
+			while (a.step(links) && b.step(links))
+				;
+
+			work += a.tail + b.tail;
+			TreeSearch smaller = (a.head == a.tail) ? a : b;
+			return Arrays.copyOf(smaller.queue, smaller.tail);
+		}
+
+		private boolean isLinked(int s, int d) {
+			for (int x : links.get(s))
+				if (x == d)
+					return true;
+
+			return false;
+		}
+
+		private void link(int s, int d) {
+			links.set(s, append(links.get(s), d));
+			links.set(d, append(links.get(d), s));
+			size++;
+		}
+
+		private void unlink(int s, int d) {
+			links.set(s, without(links.get(s), d));
+			links.set(d, without(links.get(d), s));
+			size--;
+		}
+
+		private static int[] append(int[] linked, int x) {
+			int[] copy = Arrays.copyOf(linked, linked.length + 1);
+			copy[linked.length] = x;
+			return copy;
+		}
+
+		private static int[] without(int[] linked, int x) {
+			if (linked.length == 1)
+				return NO_LINKS;
+
+			int[] copy = new int[linked.length - 1];
+			for (int i = 0, k = 0; i < linked.length; i++)
+				if (linked[i] != x)
+					copy[k++] = linked[i];
+
+			return copy;
+		}
+
+		private void touch(int x) {
+			touched.add(x);
+		}
+
+		private int newId() {
+			if (freeIds == null) {
+				trees.add(null);
+				return trees.length() - 1;
+			}
+
+			int t = freeIds.slot;
+			freeIds = freeIds.next;
+			return t;
+		}
+
+		private void freeId(int t) {
+			trees.set(t, null);
+			freeIds = new FreeSlot(t, freeIds);
+		}
+	}
+
+	/*
+	 * private inner class to hold the routes of one tree of a forest, built
+	 * the first time they are asked for. The versions in which the tree did
+	 * not change share the holder, so its routes are built at most once;
+	 * threads racing to build them build equal sets.
+	 */
+	private static class TreeRoutes {
+		volatile Set<Route> routes; // null until built.
+
+		public TreeRoutes(Set<Route> routes) {
+			this.routes = routes;
+		}
+	}
+
+	/*
+	 * private inner class to represent a breadth-first search of one tree of a
+	 * Forest that can be advanced a city at a time. A tree has no cycles, so a
+	 * city only needs to remember where it was reached from.
+	 */
+	private static class TreeSearch {
+		private int[] queue; // cities found so far, in the order found.
+		private int[] from; // from[k] = position of the city queue[k] was found from, -1 for the start.
+		private int head; // position of the next city to search from.
+		private int tail; // number of cities found.
+
+		public TreeSearch(int start) {
+			queue = new int[] { start };
+			from = new int[] { -1 };
+			tail = 1;
+		}
+
+		// adds the cities linked to the next city in the queue; returns false
+		// once the whole tree has been found.
+		public boolean step(Segments<int[]> links) {
+			if (head == tail)
+				return false;
+
+			int parent = (from[head] == -1) ? -1 : queue[from[head]];
+			for (int y : links.get(queue[head])) {
+				if (y == parent)
+					continue;
+
+				if (tail == queue.length) {
+					queue = Arrays.copyOf(queue, tail * 2);
+					from = Arrays.copyOf(from, tail * 2);
+				}
+				queue[tail] = y;
+				from[tail++] = head;
+			}
+
+			head++;
+			return true;
+		}
+
+		// searches until target is found; returns its position in the queue.
+		public int find(int target, Segments<int[]> links) {
+			for (int k = 0;; k++) {
+				while (k == tail)
+					if (!step(links))
+						throw new IllegalStateException("City " + target + " is not in the tree");
+
+				if (queue[k] == target)
+					return k;
+			}
+		}
+	}
+
+	/*
+	 * private inner class to represent a fixed set of cities in an
+	 * open-addressing table sized to the set rather than to the graph, so that
+	 * marking the cities of a small piece of a large tree costs what the piece
+	 * does.
+	 */
+	private static class CitySet {
+		private final int[] keys; // hash table of city + 1, 0 if empty.
+
+		public CitySet(int[] cities) {
+			keys = new int[Integer.highestOneBit(2 * cities.length) * 2];
+			int mask = keys.length - 1;
+			for (int x : cities) {
+				int slot = Adjacency.hash(x) & mask;
+				while (keys[slot] != 0)
+					slot = (slot + 1) & mask;
+
+				keys[slot] = x + 1;
+			}
+		}
+
+		public boolean contains(int x) {
+			int mask = keys.length - 1;
+			for (int slot = Adjacency.hash(x) & mask; keys[slot] != 0; slot = (slot + 1) & mask)
+				if (keys[slot] == x + 1)
+					return true;
+
+			return false;
+		}
+	}
+
+	/*
+	 * private inner class to hold the limits of one query while it runs. The
+	 * searches call settle() before settling each vertex and stop once it
+	 * returns false; the clock and the cancellation flag are only read every
+	 * 256 calls, so a guard costs a counter increment per vertex. Queries
+	 * without limits share NONE, which keeps no count and never stops.
+	 */
+	private static class Guard {
+		private static final Guard NONE = new Guard(null);
+		private final Limits limits; // null for NONE.
+		private final long maxSettled;
+		private final int maxResults;
+		private final boolean timed;
+		private final long deadline; // System.nanoTime() at which time is up.
+		private long settled;
+		private Truncation truncation = Truncation.NONE;
+
+		public Guard(Limits limits) {
+			this.limits = limits;
+			this.maxSettled = (limits == null) ? Long.MAX_VALUE : limits.maxSettled;
+			this.maxResults = (limits == null) ? Integer.MAX_VALUE : limits.maxResults;
+			this.timed = limits != null && limits.timeoutNanos != Long.MAX_VALUE;
+			this.deadline = timed ? System.nanoTime() + limits.timeoutNanos : 0;
+			if (limits != null && limits.cancelled)
+				truncation = Truncation.CANCELLED;
+		}
+
+		// counts a vertex about to be settled; returns false once the query
+		// must stop.
+		public boolean settle() {
+			if (limits == null)
+				return true;
+			if (truncation != Truncation.NONE)
+				return false;
+			if (++settled > maxSettled)
+				return stop(Truncation.SETTLED);
+			if ((settled & 255) == 0) {
+				if (limits.cancelled)
+					return stop(Truncation.CANCELLED);
+				if (timed && System.nanoTime() - deadline > 0)
+					return stop(Truncation.DEADLINE);
+			}
+			return true;
+		}
+
+		// checks, once a query has found one more result than the n it holds,
+		// whether it may keep it; if not, the query stops, truncated.
+		public boolean full(int n) {
+			if (n < maxResults)
+				return false;
+
+			stop(Truncation.RESULTS);
+			return true;
+		}
+
+		public boolean stopped() {
+			return truncation != Truncation.NONE;
+		}
+
+		private boolean stop(Truncation reason) {
+			if (truncation == Truncation.NONE)
+				truncation = reason;
+			return false;
+		}
+	}
+
+	/*
+	 * private inner class to hold the result of one run of Dijkstra's
+	 * algorithm under one metric, so that concurrent queries never share
+	 * scratch arrays. Costs are whole numbers (prices are summed in cents), so
+	 * paths of equal cost compare equal exactly.
+	 */
+	private static class ShortestPaths {
+		private static final long INFINITY = Long.MAX_VALUE;
+		private final Metric metric;
+		private final int[] edgeTo; // edgeTo[i] = previous edge on shortest s-d path.
+		private final long[] costTo; // costTo[i] = cost to vertex i from the source.
+		private final boolean[] marked; // array to track vertices that have been visited.
+		private int settled; // number of vertices settled.
+		private long relaxed; // number of routes looked at.
+		private int heapOperations;
+
+		// Dijkstra's algorithm from source. given a target (or -1 for none), it
+		// stops once every vertex as cheap as the target is settled, which are
+		// all the vertices that cheapest paths to the target can pass through,
+		// or earlier if guard stops it.
+		public ShortestPaths(Digraph g, int source, int target, Metric metric, Guard guard) {
+			this(g, source, (target == -1) ? null : new int[] { target }, metric, guard);
+		}
+
+		// Dijkstra's algorithm from source that stops the same way once all of
+		// the targets are settled; the targets must be reachable from source.
+		public ShortestPaths(Digraph g, int source, int[] targets, Metric metric, Guard guard) {
+			this.metric = metric;
+			int v = g.slots();
+			marked = new boolean[v]; // marked array of vertices.
+			costTo = new long[v]; // cost array array of vetices.
+			edgeTo = new int[v]; // parent array of vertices.
+			Arrays.fill(costTo, INFINITY);
+			Arrays.fill(edgeTo, -1);
+
+			// wanted[i] while i is a target not yet settled.
+			boolean[] wanted = new boolean[(targets == null) ? 0 : v];
+			int remaining = 0;
+			for (int i = 0; targets != null && i < targets.length; i++) {
+				if (!wanted[targets[i]]) {
+					wanted[targets[i]] = true;
+					remaining++;
+				}
+			}
+
+			long bound = INFINITY; // cost of the last target settled.
+			costTo[source] = 0;
+			MinHeap heap = new MinHeap();
+			heap.push(0, source);
+			while (!heap.isEmpty()) {
+				if (targets != null && remaining == 0 && heap.minKey() > bound)
+					break;
+
+				int current = heap.pop();
+				if (marked[current]) // skip stale heap entries.
+					continue;
+
+				if (!guard.settle()) // stop at the limits of the query.
+					break;
+
+				marked[current] = true;
+				settled++;
+				if (wanted.length > 0 && wanted[current]) {
+					wanted[current] = false;
+					remaining--;
+					bound = costTo[current];
+				}
+
+				Edges edges = g.adj(current);
+				relaxed += edges.end();
+				for (int i = 0; i < edges.end(); i++) {
+					if (!edges.has(i)) // skip deleted routes.
+						continue;
+
+					int d = edges.target(i);
+					long cost = costTo[current] + edges.weight(i, metric);
+					if (cost < costTo[d]) {
+						// :update edgeTo and costTo
+						costTo[d] = cost;
+						edgeTo[d] = current;
+						heap.push(cost, d);
+					}
+				}
+			}
+			heapOperations = heap.operations;
+		}
+
+		// adds the work of the search to probe.
+		public void report(AirlineMetrics.Probe probe) {
+			probe.searched(settled, relaxed, heapOperations);
+		}
+
+		// returns one cheapest path from the source to a settled target, as its
+		// vertices.
+		public int[] pathTo(int target) {
+			int n = 1;
+			for (int x = target; edgeTo[x] != -1; x = edgeTo[x])
+				n++;
+
+			int[] path = new int[n];
+			for (int x = target; n > 0; x = edgeTo[x])
+				path[--n] = x;
+
+			return path;
+		}
+
+		// returns every cheapest path from the source to target, each as its
+		// vertices, or as many as guard allows. u precedes v in the predecessor
+		// DAG when u is settled and costTo[u] plus the weight of the route u-v
+		// is exactly costTo[v]; the DAG is walked back from target without a
+		// stack of recursive calls.
+		public List<int[]> allPathsTo(Digraph g, int target, Guard guard) {
+			List<int[]> paths = new ArrayList<int[]>();
+			if (!marked[target])
+				return paths;
+
+			int[] path = new int[g.slots()]; // path[0..depth] = vertices back from target.
+			int[] next = new int[g.slots()]; // next[i] = next position to try out of path[i].
+			boolean[] onPath = new boolean[g.slots()]; // keeps zero-price cycles out.
+			int depth = 0;
+			path[0] = target;
+			onPath[target] = true;
+			while (depth >= 0) {
+				int v = path[depth];
+				if (costTo[v] == 0 && edgeTo[v] == -1) { // reached the source.
+					if (guard.full(paths.size()))
+						break;
+
+					int[] found = new int[depth + 1];
+					for (int i = 0; i <= depth; i++)
+						found[i] = path[depth - i];
+					paths.add(found);
+					onPath[v] = false;
+					depth--;
+					continue;
+				}
+
+				Edges edges = g.adj(v);
+				int k = next[depth];
+				while (k < edges.end() && !(edges.has(k) && marked[edges.target(k)] && !onPath[edges.target(k)]
+						&& costTo[edges.target(k)] + edges.weight(k, metric) == costTo[v]))
+					k++;
+
+				if (k == edges.end()) {
+					onPath[v] = false;
+					depth--;
+				} else {
+					next[depth] = k + 1;
+					path[++depth] = edges.target(k);
+					next[depth] = 0;
+					onPath[path[depth]] = true;
+				}
+			}
+
+			return paths;
+		}
+	}
+
+	/*
+	 * private inner class to represent a binary min-heap of vertices keyed by
+	 * cost. A vertex may be pushed again with a lower cost; the searches skip
+	 * the stale entries when they come out.
+	 */
+	private static class MinHeap {
+		private long[] keys = new long[16];
+		private int[] values = new int[16];
+		private int size;
+		private int operations; // pushes and pops so far.
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public long minKey() {
+			return keys[0];
+		}
+
+		public void push(long key, int value) {
+			operations++;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+
+			int i = size++;
+			while (i > 0 && keys[(i - 1) / 2] > key) {
+				keys[i] = keys[(i - 1) / 2];
+				values[i] = values[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		// removes the vertex with the lowest cost and returns it.
+		public int pop() {
+			operations++;
+			int min = values[0];
+			long key = keys[--size];
+			int value = values[size];
+			int i = 0;
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && keys[child + 1] < keys[child])
+					child++;
+				if (keys[child] >= key)
+					break;
+
+				keys[i] = keys[child];
+				values[i] = values[child];
+				i = child;
+			}
+			keys[i] = key;
+			values[i] = value;
+			return min;
+		}
+	}
+
+	/*
+	 * private inner class to represent a path found by Yen's algorithm as its
+	 * vertices and its price in cents. Two itineraries are equal when they
+	 * visit the same vertices in the same order.
+	 */
+	private static class Itinerary {
+		private final int[] cities;
+		private final long cents;
+
+		public Itinerary(int[] cities, long cents) {
+			this.cities = cities;
+			this.cents = cents;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof Itinerary) && Arrays.equals(cities, ((Itinerary) other).cities);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(cities);
+		}
+	}
+
+	/*
+	 * private inner class to run Yen's algorithm for the cheapest loopless
+	 * itineraries into one destination. Each new itinerary branches off a
+	 * previous one at a spur city, after a root path that is kept, through a
+	 * route that no earlier itinerary with the same root took. One full
+	 * shortest-path tree grown from the destination serves every spur search:
+	 * its costs are exact lower bounds on the cost of the rest of the trip,
+	 * so when the tree path from the spur city avoids the blocked cities and
+	 * routes it is the answer outright, and otherwise it is the heuristic of
+	 * an A* search. The scratch arrays of the A* searches are shared and
+	 * reset lazily by stamping.
+	 */
+	private static class Yen {
+		private final Digraph g;
+		private final int destination;
+		private final Guard guard;
+		private final ShortestPaths tree; // routes are two-way, so edgeTo[i] leads towards destination.
+		private final boolean[] blocked; // cities of the current root path.
+		private final long[] costTo; // costTo[i] = cost from the spur city, if seen[i] == stamp.
+		private final int[] edgeTo; // edgeTo[i] = previous city from the spur city, if seen[i] == stamp.
+		private final int[] seen;
+		private final int[] closed; // closed[i] == stamp once i is settled.
+		private int stamp;
+		private int settled; // work of the spur searches.
+		private long relaxed;
+		private int heapOperations;
+
+		public Yen(Digraph g, int destination, Guard guard) {
+			this.g = g;
+			this.destination = destination;
+			this.guard = guard;
+			tree = new ShortestPaths(g, destination, -1, Metric.PRICE, guard);
+			blocked = new boolean[g.slots()];
+			costTo = new long[g.slots()];
+			edgeTo = new int[g.slots()];
+			seen = new int[g.slots()];
+			closed = new int[g.slots()];
+		}
+
+		// adds the work of the tree and the spur searches to probe.
+		public void report(AirlineMetrics.Probe probe) {
+			tree.report(probe);
+			probe.searched(settled, relaxed, heapOperations);
+		}
+
+		// returns up to k cheapest itineraries from source, cheapest first. if
+		// guard stops the searches, the itineraries found so far are returned;
+		// a tree cut short still gives the first, but its costs no longer
+		// bound the others.
+		public List<Itinerary> cheapest(int source, int k) {
+			List<Itinerary> found = new ArrayList<Itinerary>();
+			if (!tree.marked[source])
+				return found;
+
+			PriorityQueue<Itinerary> candidates = new PriorityQueue<Itinerary>(
+					(a, b) -> (a.cents != b.cents) ? Long.compare(a.cents, b.cents)
+							: Integer.compare(a.cities.length, b.cities.length));
+			Set<Itinerary> known = new HashSet<Itinerary>();
+
+			found.add(new Itinerary(treePath(source), tree.costTo[source]));
+			known.add(found.get(0));
+			while (found.size() < k && !guard.stopped()) {
+				int[] last = found.get(found.size() - 1).cities;
+				long rootCents = 0;
+				for (int j = 0; j < last.length - 1; j++) {
+					// block the routes out of the spur city that earlier itineraries
+					// with the same root took, and the root's own cities.
+					ArrayList<Integer> taken = new ArrayList<Integer>();
+					for (Itinerary itinerary : found)
+						if (itinerary.cities.length > j + 1 && Arrays.equals(itinerary.cities, 0, j + 1, last, 0, j + 1))
+							taken.add(itinerary.cities[j + 1]);
+
+					for (int i = 0; i < j; i++)
+						blocked[last[i]] = true;
+
+					int[] spur = spurPath(last[j], taken);
+					for (int i = 0; i < j; i++)
+						blocked[last[i]] = false;
+
+					if (spur != null) {
+						int[] cities = Arrays.copyOf(last, j + spur.length);
+						System.arraycopy(spur, 0, cities, j, spur.length);
+						Itinerary candidate = new Itinerary(cities, rootCents + spurCents);
+						if (known.add(candidate))
+							candidates.add(candidate);
+					}
+
+					rootCents += g.cents(last[j], last[j + 1]);
+				}
+
+				// a spur search cut short may have missed the next cheapest; a
+				// next cheapest beyond the limits is dropped.
+				if (candidates.isEmpty() || guard.stopped() || guard.full(found.size()))
+					break;
+
+				found.add(candidates.poll());
+			}
+
+			return found;
+		}
+
+		private long spurCents; // cost of the last path returned by spurPath.
+
+		// returns the cheapest path from spur to the destination that avoids
+		// the blocked cities and does not start with a route to a taken city,
+		// or null if there is none.
+		private int[] spurPath(int spur, List<Integer> taken) {
+			if (treePathIsFree(spur, taken)) {
+				spurCents = tree.costTo[spur];
+				return treePath(spur);
+			}
+
+			stamp++;
+			costTo[spur] = 0;
+			seen[spur] = stamp;
+			edgeTo[spur] = -1;
+			MinHeap heap = new MinHeap();
+			heap.push(tree.costTo[spur], spur);
+			while (!heap.isEmpty()) {
+				int current = heap.pop();
+				if (closed[current] == stamp)
+					continue;
+
+				if (!guard.settle()) // stop at the limits of the query.
+					break;
+
+				closed[current] = stamp;
+				settled++;
+				if (current == destination)
+					break;
+
+				Edges edges = g.adj(current);
+				relaxed += edges.end();
+				for (int i = 0; i < edges.end(); i++) {
+					int d = edges.has(i) ? edges.target(i) : -1;
+					if (d == -1 || blocked[d] || closed[d] == stamp || !tree.marked[d]
+							|| (current == spur && taken.contains(d)))
+						continue;
+
+					long cost = costTo[current] + edges.cents(i);
+					if (seen[d] != stamp || cost < costTo[d]) {
+						seen[d] = stamp;
+						costTo[d] = cost;
+						edgeTo[d] = current;
+						heap.push(cost + tree.costTo[d], d);
+					}
+				}
+			}
+
+			heapOperations += heap.operations;
+			if (closed[destination] != stamp)
+				return null;
+
+			int n = 1;
+			for (int x = destination; x != spur; x = edgeTo[x])
+				n++;
+
+			int[] path = new int[n];
+			for (int x = destination; n > 0; x = edgeTo[x])
+				path[--n] = x;
+
+			spurCents = costTo[destination];
+			return path;
+		}
+
+		// checks whether the tree path from spur avoids the blocked cities and
+		// the taken routes.
+		private boolean treePathIsFree(int spur, List<Integer> taken) {
+			if (taken.contains(tree.edgeTo[spur]))
+				return false;
+
+			for (int x = tree.edgeTo[spur]; x != -1; x = tree.edgeTo[x])
+				if (blocked[x])
+					return false;
+
+			return true;
+		}
+
+		// returns the tree path from city x to the destination.
+		private int[] treePath(int x) {
+			int n = 1;
+			for (int y = x; y != destination; y = tree.edgeTo[y])
+				n++;
+
+			int[] path = new int[n];
+			for (int i = 0; i < n; i++, x = tree.edgeTo[x])
+				path[i] = x;
+
+			return path;
+		}
+	}
+
+	/*
+	 * private inner class to run a label-setting search for the itineraries
+	 * that trade off price, distance and legs. A label is one way of reaching
+	 * a city, with its three totals; a label at a city is dropped when another
+	 * label settled there is at least as good in all three. Labels are popped
+	 * in order of price plus the cheapest price on to the destination, then
+	 * distance, then legs, so a label is never beaten by one popped after it
+	 * and every label settled at the destination belongs to the answer. Those
+	 * labels also prune: a label whose cheapest possible completion one of
+	 * them already beats is never extended. Labels are kept in parallel
+	 * arrays, and the labels settled at each city form a bucket chained
+	 * through those arrays.
+	 */
+	private static class Pareto {
+		private final Digraph g;
+		private final int destination;
+		private final ShortestPaths tree; // tree.costTo[i] = cheapest price from i to destination.
+		private long[] cents = new long[64]; // cents[l] = total price of label l.
+		private int[] miles = new int[64]; // miles[l] = total distance of label l.
+		private int[] legs = new int[64]; // legs[l] = number of routes of label l.
+		private int[] city = new int[64]; // city[l] = the city label l reaches.
+		private int[] parent = new int[64]; // parent[l] = label l extends, or -1.
+		private int[] next = new int[64]; // next[l] = next label settled at city[l], or -1.
+		private int labels;
+		private final int[] settled; // settled[i] = last label settled at i, or -1.
+		private int[] heap = new int[64]; // labels in order of key.
+		private int heapSize;
+		private int settledLabels;
+		private long relaxed;
+		private int heapOperations;
+
+		public Pareto(Digraph g, int source, int destination, Guard guard) {
+			this.g = g;
+			this.destination = destination;
+			tree = new ShortestPaths(g, destination, -1, Metric.PRICE, guard);
+			settled = new int[g.slots()];
+			Arrays.fill(settled, -1);
+
+			// a tree cut short gives no bounds to steer or prune by.
+			if (guard.stopped())
+				return;
+
+			push(newLabel(source, 0, 0, 0, -1));
+			int found = 0; // labels settled at the destination.
+			while (heapSize > 0 && guard.settle()) {
+				int label = pop();
+				int current = city[label];
+				if (dominated(settled[current], cents[label], miles[label], legs[label]))
+					continue;
+
+				// a trade-off beyond the limits is dropped, not kept.
+				if (current == destination && guard.full(found))
+					break;
+
+				next[label] = settled[current];
+				settled[current] = label;
+				settledLabels++;
+				if (current == destination) {
+					found++;
+					continue;
+				}
+
+				Edges edges = g.adj(current);
+				relaxed += edges.end();
+				for (int i = 0; i < edges.end(); i++) {
+					int d = edges.has(i) ? edges.target(i) : -1;
+					if (d == -1 || !tree.marked[d])
+						continue;
+
+					long c = cents[label] + edges.cents(i);
+					int m = miles[label] + edges.distance(i);
+					int l = legs[label] + 1;
+					if (dominated(settled[d], c, m, l)
+							|| dominated(settled[destination], c + tree.costTo[d], m, (d == destination) ? l : l + 1))
+						continue;
+
+					push(newLabel(d, c, m, l, label));
+				}
+			}
+		}
+
+		// adds the work of the tree and the label search to probe; a label
+		// counts as a settled vertex.
+		public void report(AirlineMetrics.Probe probe) {
+			tree.report(probe);
+			probe.searched(settledLabels, relaxed, heapOperations);
+		}
+
+		// returns the paths of the labels settled at the destination, in order
+		// of price, then distance.
+		public List<int[]> paths() {
+			List<int[]> paths = new ArrayList<int[]>();
+			for (int label = settled[destination]; label != -1; label = next[label]) {
+				int[] path = new int[legs[label] + 1];
+				for (int l = label, n = path.length; l != -1; l = parent[l])
+					path[--n] = city[l];
+				paths.add(path);
+			}
+
+			Collections.reverse(paths);
+			return paths;
+		}
+
+		// checks whether any label in the bucket starting at label is at least
+		// as good as the given totals in all three.
+		private boolean dominated(int label, long c, int m, int l) {
+			for (; label != -1; label = next[label])
+				if (cents[label] <= c && miles[label] <= m && legs[label] <= l)
+					return true;
+
+			return false;
+		}
+
+		private int newLabel(int i, long c, int m, int l, int from) {
+			if (labels == cents.length) {
+				int n = labels * 2;
+				cents = Arrays.copyOf(cents, n);
+				miles = Arrays.copyOf(miles, n);
+				legs = Arrays.copyOf(legs, n);
+				city = Arrays.copyOf(city, n);
+				parent = Arrays.copyOf(parent, n);
+				next = Arrays.copyOf(next, n);
+			}
+
+			cents[labels] = c;
+			miles[labels] = m;
+			legs[labels] = l;
+			city[labels] = i;
+			parent[labels] = from;
+			next[labels] = -1;
+			return labels++;
+		}
+
+		// orders labels by price plus the cheapest price on, then distance,
+		// then legs.
+		private boolean before(int a, int b) {
+			long ka = cents[a] + tree.costTo[city[a]];
+			long kb = cents[b] + tree.costTo[city[b]];
+			if (ka != kb)
+				return ka < kb;
+			if (miles[a] != miles[b])
+				return miles[a] < miles[b];
+			return legs[a] < legs[b];
+		}
+
+		private void push(int label) {
+			heapOperations++;
+			if (heapSize == heap.length)
+				heap = Arrays.copyOf(heap, heapSize * 2);
+
+			int i = heapSize++;
+			while (i > 0 && before(label, heap[(i - 1) / 2])) {
+				heap[i] = heap[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			heap[i] = label;
+		}
+
+		private int pop() {
+			heapOperations++;
+			int min = heap[0];
+			int label = heap[--heapSize];
+			int i = 0;
+			while (2 * i + 1 < heapSize) {
+				int child = 2 * i + 1;
+				if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+					child++;
+				if (!before(heap[child], label))
+					break;
+
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = label;
+			return min;
+		}
+	}
+
+	/*
+	 * private inner class to represent a deleted vertex slot on an immutable
+	 * stack, so that versions can share the rest of the stack.
+	 */
+	private static class FreeSlot {
+		private final int slot;
+		private final FreeSlot next;
+
+		public FreeSlot(int slot, FreeSlot next) {
+			this.slot = slot;
+			this.next = next;
+		}
+	}
+
+	/*
+	 * private inner class to represent an array split into fixed-size segments
+	 * that versions of the graph share. A copy starts with the same segments;
+	 * a segment is copied the first time the copy writes to it.
+	 */
+	private static class Segments<T> {
+		private static final int SHIFT = 8; // 256 references per segment.
+		private static final int MASK = (1 << SHIFT) - 1;
+		private Object[][] segments;
+		private boolean[] owned; // owned[s] = segment s is this copy's own; null once frozen.
+		private int length;
+
+		public Segments() {
+			segments = new Object[0][];
+			owned = new boolean[0];
+		}
+
+		public Segments(Segments<T> base) {
+			segments = base.segments.clone();
+			owned = new boolean[segments.length];
+			length = base.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get(int i) {
+			return (T) segments[i >>> SHIFT][i & MASK];
+		}
+
+		public void set(int i, T value) {
+			int s = i >>> SHIFT;
+			if (!owned[s]) {
+				segments[s] = segments[s].clone();
+				owned[s] = true;
+			}
+			segments[s][i & MASK] = value;
+		}
+
+		public void add(T value) {
+			int s = length >>> SHIFT;
+			if (s == segments.length) {
+				segments = Arrays.copyOf(segments, s + 1);
+				owned = Arrays.copyOf(owned, s + 1);
+				segments[s] = new Object[MASK + 1];
+				owned[s] = true;
+			}
+			set(length++, value);
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public void freeze() {
+			owned = null;
+		}
+	}
+
+	/*
+	 * private inner class to represent an int array split into segments that
+	 * versions of the graph share, like Segments.
+	 */
+	private static class IntSegments {
+		private static final int SHIFT = 10; // 1024 ints per segment.
+		private static final int MASK = (1 << SHIFT) - 1;
+		private int[][] segments;
+		private boolean[] owned; // owned[s] = segment s is this copy's own; null once frozen.
+		private int length;
+
+		public IntSegments(int length) {
+			this.length = length;
+			segments = new int[(length + MASK) >>> SHIFT][];
+			owned = new boolean[segments.length];
+			for (int s = 0; s < segments.length; s++) {
+				segments[s] = new int[Math.min(MASK + 1, length - (s << SHIFT))];
+				owned[s] = true;
+			}
+		}
+
+		public IntSegments(IntSegments base) {
+			segments = base.segments.clone();
+			owned = new boolean[segments.length];
+			length = base.length;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public int get(int i) {
+			return segments[i >>> SHIFT][i & MASK];
+		}
+
+		public void set(int i, int value) {
+			int s = i >>> SHIFT;
+			if (!owned[s]) {
+				segments[s] = segments[s].clone();
+				owned[s] = true;
+			}
+			segments[s][i & MASK] = value;
+		}
+
+		public void add(int value) {
+			int s = length >>> SHIFT;
+			if (s == segments.length) {
+				segments = Arrays.copyOf(segments, s + 1);
+				owned = Arrays.copyOf(owned, s + 1);
+				segments[s] = new int[MASK + 1];
+				owned[s] = true;
+			} else if ((length & MASK) == segments[s].length) { // a short last segment.
+				segments[s] = Arrays.copyOf(segments[s], MASK + 1);
+				owned[s] = true;
+			}
+			set(length++, value);
+		}
+
+		public void freeze() {
+			owned = null;
+		}
+	}
+
+	/*
+	 * private interface to read the routes out of one vertex by position, so
+	 * that the searches run the same on routes stored on and off the heap.
+	 * Positions run from 0 to end(); a deleted route leaves a position empty.
+	 */
+	private interface Edges extends Iterable<Route> {
+		// number of positions, empty or not.
+		int end();
+
+		// number of routes.
+		int size();
+
+		// checks whether position k holds a route.
+		boolean has(int k);
+
+		int target(int k);
+
+		double price(int k);
+
+		// price of the route at position k in cents.
+		long cents(int k);
+
+		int distance(int k);
+
+		// weight of the route at position k under the given metric.
+		default long weight(int k, Metric metric) {
+			switch (metric) {
+				case PRICE:
+					return cents(k);
+				case DISTANCE:
+					return distance(k);
+				default:
+					return 1;
+			}
+		}
+
+		// returns the Route at position k, or null if k is empty.
+		Route route(int k);
+
+		// returns the position of the route to destination, or -1 if there is
+		// none.
+		int indexOf(int destination);
+
+		// returns the route to destination, or null if there is none.
+		Route get(int destination);
+	}
+
+	/*
+	 * private inner class to represent a read-only graph stored off the Java
+	 * heap, in a direct buffer or in a file mapped into memory, in compressed
+	 * sparse row form. The heap only holds the city names, however many routes
+	 * there are. The buffer is laid out as
+	 * 
+	 * magic, format, cities, entries (ints)
+	 * offsets[cities + 1] (ints; the routes out of city i are at offsets[i]..)
+	 * targets[entries] (ints, ascending within each city)
+	 * distances[entries] (ints)
+	 * prices[entries] (doubles)
+	 * cents[entries] (longs; the prices in cents, which the searches compare)
+	 * names[cities] (an int byte length, then the UTF-8 bytes)
+	 * 
+	 * in little-endian order. Every route is stored once in each direction.
+	 * Only absolute reads are used, so any number of threads may share it.
+	 * The searches read the columns only; a Route is created only when one is
+	 * handed out, as a leg of an itinerary, a route of an MST or a direct
+	 * route of a city, or when a city's routes move onto the heap to be
+	 * edited.
+	 */
+	private static class OffHeapGraph {
+		private static final int MAGIC = 0x53524941; // "AIRS"
+		private static final int FORMAT = 2; // 2 added the cents column.
+		private static final int HEADER = 16; // bytes before the offsets.
+		private final ByteBuffer buffer;
+		private final int v; // number of cities.
+		private final int entries; // number of routes, counting both directions.
+		private final int targets; // byte position of targets[0].
+		private final int distances; // byte position of distances[0].
+		private final int prices; // byte position of prices[0].
+		private final int cents; // byte position of cents[0].
+		private final String[] names;
+
+		// reads the header and the city names of a graph written by build().
+		private OffHeapGraph(ByteBuffer buffer) throws IOException {
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC)
+				throw new IOException("Not a route snapshot");
+			if (buffer.getInt(4) != FORMAT)
+				throw new IOException("Unsupported route snapshot format " + buffer.getInt(4));
+
+			this.buffer = buffer;
+			v = buffer.getInt(8);
+			entries = buffer.getInt(12);
+			targets = HEADER + 4 * (v + 1);
+			distances = targets + 4 * entries;
+			prices = distances + 4 * entries;
+			cents = prices + 8 * entries;
+
+			names = new String[v];
+			int at = cents + 8 * entries;
+			try {
+				for (int i = 0; i < v; i++) {
+					byte[] name = new byte[buffer.getInt(at)];
+					for (int b = 0; b < name.length; b++)
+						name[b] = buffer.get(at + 4 + b);
+
+					names[i] = new String(name, StandardCharsets.UTF_8);
+					at += 4 + name.length;
+				}
+			} catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+				throw new IOException("Truncated route snapshot", e);
+			}
+		}
+
+		// maps a snapshot file written by write() into memory.
+		public static OffHeapGraph map(String fileName) throws IOException {
+			try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE)
+					throw new IOException("Route snapshot too large: " + fileName);
+
+				return new OffHeapGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+
+		// copies the cities and routes of g into direct memory, numbering the
+		// cities densely in slot order.
+		public static OffHeapGraph of(Digraph g) {
+			try {
+				return of(g, null);
+			} catch (IOException e) { // only writing to a file can fail.
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// writes the cities and routes of g to a snapshot file that map() reads.
+		public static void write(Digraph g, String fileName) throws IOException {
+			try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				((MappedByteBuffer) of(g, channel).buffer).force();
+			}
+		}
+
+		private static OffHeapGraph of(Digraph g, FileChannel channel) throws IOException {
+			int[] newIds = new int[g.slots()];
+			String[] names = new String[g.size()];
+			int n = 0; // number of routes, each counted once.
+			for (int i = 0; i < g.slots(); i++) {
+				newIds[i] = -1;
+				if (g.name(i) != null) {
+					newIds[i] = n;
+					names[n++] = g.name(i);
+				}
+			}
+
+			n = 0;
+			for (int i = 0; i < g.slots(); i++) {
+				Edges edges = g.adj(i);
+				for (int j = 0; j < edges.end(); j++)
+					if (edges.has(j) && edges.target(j) >= i)
+						n++;
+			}
+
+			int[] from = new int[n];
+			int[] to = new int[n];
+			int[] distance = new int[n];
+			double[] price = new double[n];
+			n = 0;
+			for (int i = 0; i < g.slots(); i++) {
+				Edges edges = g.adj(i);
+				for (int j = 0; j < edges.end(); j++) {
+					if (!edges.has(j) || edges.target(j) < i)
+						continue;
+
+					from[n] = newIds[i];
+					to[n] = newIds[edges.target(j)];
+					distance[n] = edges.distance(j);
+					price[n++] = edges.price(j);
+				}
+			}
+
+			return build(names, n, from, to, distance, price, channel);
+		}
+
+		// stores the given cities and the n routes from[k]-to[k] in both
+		// directions, in direct memory or, given a channel, in its file. a later
+		// route between the same two cities replaces an earlier one.
+		public static OffHeapGraph build(String[] names, int n, int[] from, int[] to,
+				int[] distance, double[] price, FileChannel channel) throws IOException {
+			int v = names.length;
+			int[] offsets = new int[v + 1];
+			for (int k = 0; k < n; k++) {
+				offsets[from[k] + 1]++;
+				if (from[k] != to[k])
+					offsets[to[k] + 1]++;
+			}
+
+			for (int i = 0; i < v; i++)
+				offsets[i + 1] += offsets[i];
+
+			// group the entries by city as (target << 32 | route).
+			long[] keys = new long[offsets[v]];
+			int[] next = Arrays.copyOf(offsets, v);
+			for (int k = 0; k < n; k++) {
+				keys[next[from[k]]++] = ((long) to[k] << 32) | k;
+				if (from[k] != to[k])
+					keys[next[to[k]]++] = ((long) from[k] << 32) | k;
+			}
+
+			// order each city's entries by target, keeping the last route to each.
+			int m = 0;
+			for (int i = 0; i < v; i++) {
+				int start = offsets[i];
+				int end = offsets[i + 1];
+				Arrays.sort(keys, start, end);
+				offsets[i] = m;
+				for (int j = start; j < end; j++)
+					if (j + 1 == end || (keys[j + 1] >>> 32) != (keys[j] >>> 32))
+						keys[m++] = keys[j];
+			}
+			offsets[v] = m;
+
+			byte[][] bytes = new byte[v][];
+			long size = HEADER + 4L * (v + 1) + 24L * m;
+			for (int i = 0; i < v; i++) {
+				bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+				size += 4 + bytes[i].length;
+			}
+
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Too many routes to store off the heap: " + m);
+
+			ByteBuffer buffer = (channel == null) ? ByteBuffer.allocateDirect((int) size)
+					: channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT);
+			buffer.putInt(8, v);
+			buffer.putInt(12, m);
+
+			int targets = HEADER + 4 * (v + 1);
+			int distances = targets + 4 * m;
+			int prices = distances + 4 * m;
+			int cents = prices + 8 * m;
+			for (int i = 0; i <= v; i++)
+				buffer.putInt(HEADER + 4 * i, offsets[i]);
+
+			for (int j = 0; j < m; j++) {
+				int k = (int) keys[j];
+				buffer.putInt(targets + 4 * j, (int) (keys[j] >>> 32));
+				buffer.putInt(distances + 4 * j, distance[k]);
+				buffer.putDouble(prices + 8 * j, price[k]);
+				buffer.putLong(cents + 8 * j, Math.round(price[k] * 100));
+			}
+
+			int at = cents + 8 * m;
+			for (int i = 0; i < v; i++) {
+				buffer.putInt(at, bytes[i].length);
+				for (int b = 0; b < bytes[i].length; b++)
+					buffer.put(at + 4 + b, bytes[i][b]);
+				at += 4 + bytes[i].length;
+			}
+
+			return new OffHeapGraph(buffer);
+		}
+
+		public int slots() {
+			return v;
+		}
+
+		// number of routes, counting both directions.
+		public int entries() {
+			return entries;
+		}
+
+		public String name(int i) {
+			return names[i];
+		}
+
+		public Edges edges(int i) {
+			return new OffHeapEdges(this, i);
+		}
+	}
+
+	/*
+	 * private inner class to represent a view of the routes out of one city of
+	 * an OffHeapGraph. Route objects are only created when asked for.
+	 */
+	private static class OffHeapEdges implements Edges {
+		private final OffHeapGraph graph;
+		private final int vertex;
+		private final int start; // index of the first route of vertex.
+		private final int end; // number of routes of vertex.
+
+		public OffHeapEdges(OffHeapGraph graph, int vertex) {
+			this.graph = graph;
+			this.vertex = vertex;
+			start = graph.buffer.getInt(OffHeapGraph.HEADER + 4 * vertex);
+			end = graph.buffer.getInt(OffHeapGraph.HEADER + 4 * (vertex + 1)) - start;
+		}
+
+		public int end() {
+			return end;
+		}
+
+		public int size() {
+			return end;
+		}
+
+		public boolean has(int k) {
+			return true;
+		}
+
+		public int target(int k) {
+			return graph.buffer.getInt(graph.targets + 4 * (start + k));
+		}
+
+		public double price(int k) {
+			return graph.buffer.getDouble(graph.prices + 8 * (start + k));
+		}
+
+		public long cents(int k) {
+			return graph.buffer.getLong(graph.cents + 8 * (start + k));
+		}
+
+		public int distance(int k) {
+			return graph.buffer.getInt(graph.distances + 4 * (start + k));
+		}
+
+		public Route route(int k) {
+			return new Route(graph.name(vertex), graph.name(target(k)), distance(k), price(k));
+		}
+
+		// binary searches the targets, which are stored in ascending order.
+		public int indexOf(int destination) {
+			int lo = 0;
+			int hi = end - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int t = target(mid);
+				if (t < destination)
+					lo = mid + 1;
+				else if (t > destination)
+					hi = mid - 1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+
+		public Route get(int destination) {
+			int k = indexOf(destination);
+			return (k == -1) ? null : route(k);
+		}
+
+		public Iterator<Route> iterator() {
+			return new Iterator<Route>() {
+				private int k;
+
+				public boolean hasNext() {
+					return k < end;
+				}
+
+				public Route next() {
+					if (k >= end)
+						throw new NoSuchElementException();
+
+					return route(k++);
+				}
+			};
+		}
+	}
+
+	/*
+	 * private inner class to represent the routes out of one vertex. Routes are
+	 * kept in insertion order in parallel arrays, with the weights of each
+	 * route copied into primitive columns so that searches never read the
+	 * Route objects, and an open-addressing table
+	 * maps each destination index to its position, so looking up or deleting the
+	 * route to a given destination takes constant time while iteration order
+	 * stays stable. Deleted positions are left empty and squeezed out once they
+	 * outnumber the live routes. A table is only written by the graph version
+	 * whose stamp it carries; other versions copy it before changing it.
+	 */
+	private static class Adjacency implements Edges {
+		private static final int[] NONE = new int[0];
+		private final long stamp; // stamp of the graph version that owns this table.
+		private int[] targets = NONE; // targets[i] = destination of the i-th route.
+		private double[] prices = new double[0]; // prices[i] = price of the i-th route.
+		private long[] cents = new long[0]; // cents[i] = price of the i-th route in cents.
+		private int[] distances = NONE; // distances[i] = distance of the i-th route.
+		private Route[] routes = new Route[0]; // routes[i] = i-th route, null if deleted.
+		private int end; // number of used positions, live or deleted.
+		private int size; // number of live routes.
+		private int[] keys = NONE; // hash table of destination + 1, 0 if empty.
+		private int[] positions = NONE; // positions[slot] = position of keys[slot].
+
+		public Adjacency(long stamp) {
+			this.stamp = stamp;
+		}
+
+		// copies other for the graph version with the given stamp.
+		public Adjacency(Adjacency other, long stamp) {
+			this.stamp = stamp;
+			targets = other.targets.clone();
+			prices = other.prices.clone();
+			cents = other.cents.clone();
+			distances = other.distances.clone();
+			routes = other.routes.clone();
+			end = other.end;
+			size = other.size;
+			keys = other.keys.clone();
+			positions = other.positions.clone();
+		}
+
+		// number of used positions; route(i) is null for deleted ones.
+		public int end() {
+			return end;
+		}
+
+		// number of routes.
+		public int size() {
+			return size;
+		}
+
+		public int target(int i) {
+			return targets[i];
+		}
+
+		public Route route(int i) {
+			return routes[i];
+		}
+
+		public boolean has(int i) {
+			return routes[i] != null;
+		}
+
+		public double price(int i) {
+			return prices[i];
+		}
+
+		public long cents(int i) {
+			return cents[i];
+		}
+
+		public int distance(int i) {
+			return distances[i];
+		}
+
+		public int indexOf(int destination) {
+			int slot = find(destination);
+			return (keys.length == 0 || keys[slot] == 0) ? -1 : positions[slot];
+		}
+
+		// returns the route to destination, or null if there is none.
+		public Route get(int destination) {
+			int i = indexOf(destination);
+			return (i == -1) ? null : routes[i];
+		}
+
+		// adds or replaces the route to destination; returns the replaced route.
+		public Route put(int destination, Route route) {
+			if (2 * (size + 1) > keys.length)
+				rehash(Math.max(4, Integer.highestOneBit(size + 1) * 4));
+
+			int slot = find(destination);
+			if (keys[slot] != 0) {
+				int i = positions[slot];
+				Route old = routes[i];
+				routes[i] = route;
+				prices[i] = route.price;
+				cents[i] = route.cents;
+				distances[i] = route.distance;
+				return old;
+			}
+
+			if (end == routes.length) {
+				int capacity = Math.max(4, end * 2);
+				targets = Arrays.copyOf(targets, capacity);
+				prices = Arrays.copyOf(prices, capacity);
+				cents = Arrays.copyOf(cents, capacity);
+				distances = Arrays.copyOf(distances, capacity);
+				routes = Arrays.copyOf(routes, capacity);
+			}
+
+			targets[end] = destination;
+			prices[end] = route.price;
+			cents[end] = route.cents;
+			distances[end] = route.distance;
+			routes[end] = route;
+			keys[slot] = destination + 1;
+			positions[slot] = end++;
+			size++;
+			return null;
+		}
+
+		// removes the route to destination; returns it, or null if there is none.
+		public Route remove(int destination) {
+			if (keys.length == 0)
+				return null;
+
+			int slot = find(destination);
+			if (keys[slot] == 0)
+				return null;
+
+			Route old = routes[positions[slot]];
+			routes[positions[slot]] = null;
+			size--;
+
+			// shift back the entries that probed past the freed slot.
+			int mask = keys.length - 1;
+			int hole = slot;
+			for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+				int home = hash(keys[next] - 1) & mask;
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					keys[hole] = keys[next];
+					positions[hole] = positions[next];
+					hole = next;
+				}
+			}
+			keys[hole] = 0;
+
+			if (end > 2 * size + 8)
+				compact();
+
+			return old;
+		}
+
+		// iterates over the live routes in insertion order.
+		public Iterator<Route> iterator() {
+			return new Iterator<Route>() {
+				private int i = skip(0);
+
+				public boolean hasNext() {
+					return i < end;
+				}
+
+				public Route next() {
+					if (i >= end)
+						throw new NoSuchElementException();
+
+					Route r = routes[i];
+					i = skip(i + 1);
+					return r;
+				}
+			};
+		}
+
+		// returns the first live position at or after i.
+		private int skip(int i) {
+			while (i < end && routes[i] == null)
+				i++;
+
+			return i;
+		}
+
+		// squeezes the deleted positions out, keeping the order of the rest.
+		private void compact() {
+			int live = 0;
+			for (int i = 0; i < end; i++) {
+				if (routes[i] != null) {
+					targets[live] = targets[i];
+					prices[live] = prices[i];
+					cents[live] = cents[i];
+					distances[live] = distances[i];
+					routes[live++] = routes[i];
+				}
+			}
+
+			Arrays.fill(routes, live, end, null);
+			end = live;
+			rehash(keys.length);
+		}
+
+		// rebuilds the hash table with the given power-of-two capacity.
+		private void rehash(int capacity) {
+			keys = new int[capacity];
+			positions = new int[capacity];
+			for (int i = 0; i < end; i++) {
+				if (routes[i] == null)
+					continue;
+
+				int slot = find(targets[i]);
+				keys[slot] = targets[i] + 1;
+				positions[slot] = i;
+			}
+		}
+
+		// returns the slot holding destination, or the empty slot ending its probe.
+		private int find(int destination) {
+			if (keys.length == 0)
+				return 0;
+
+			int mask = keys.length - 1;
+			int slot = hash(destination) & mask;
+			while (keys[slot] != 0 && keys[slot] != destination + 1)
+				slot = (slot + 1) & mask;
+
+			return slot;
+		}
+
+		private static int hash(int key) {
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+	/*
+	 * private inner class to represent union-find data structure.
+	 */
+	static class UF {
+		private int count;
+		private int[] id;
+		private int[] size;
+
+		public UF(int n) {
+			if (n <= 0)
+				throw new IllegalArgumentException("Component size must be greater than zero.");
+
+			count = n;
+			id = new int[n];
+			size = new int[n];
+
+			// intialize each vertex to have itself as its ID.
+			for (int i = 0; i < id.length; i++) {
+				id[i] = i;
+				size[i] = 1; // each tree has initial size of 1.
+			}
+		}
+
+		// unify vertices p and q into one component.
+		public void unify(int p, int q) {
+			// return if two vertices are already coonnected
+			// to the same component.
+
+			int pID = find(p), qID = find(q);
+			if (pID == qID)
+				return;
+
+			if (size[pID] < size[qID]) // check if first component is smaller.
+			{
+				id[pID] = qID; // update ID of smaller component.
+				size[qID] += size[pID]; // add the size of both components.
+			} else // check if first component is larger and update.
+			{
+				id[qID] = pID;
+				size[pID] += size[qID];
+			}
+
+			count--; // decrement the count after merging two components.
+		}
+
+		// find the component of vertex p.
+		// returns the ID of p.
+		public int find(int p) {
+			if (p == id[p]) // locate the root of the component.
+				return p;
+
+			// copress path leading back to root
+			// using "path compression" to achieve amortized constant time
+			return id[p] = find(id[p]);
+		}
+
+		// check if two vertices are connected to the same component.
+		public boolean isConnected(int p, int q) {
+			return find(p) == find(q);
+		}
+
+		// return the size of the component that 'p' belongs to.
+		public int componentSize(int p) {
+			return size[find(p)];
+		}
+
+		// return the number of components.
+		public int count() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times getMSTs (Kruskal) against getMSTsParallel (Boruvka) on a random
+ * network, running the parallel version in fork/join pools of 1, 2, 4, ...
+ * threads up to the number of available processors.
+ *
+ * Usage: java MSTBenchmark [cities] [average degree] [runs] [max threads]
+ */
+final public class MSTBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int maxThreads = args.length > 3 ? Integer.parseInt(args[3])
+        : Runtime.getRuntime().availableProcessors();
+
+    File file = File.createTempFile("network", ".txt");
+    file.deleteOnExit();
+    new NetworkGenerator(cities).topology(NetworkGenerator.Topology.UNIFORM)
+        .degree(degree).seed(42).writeRoutes(file.getPath());
+    AirlineSystem airline = new AirlineSystem();
+    airline.loadRoutes(file.getPath());
+    System.out.println(cities + " cities, average degree " + degree + ", "
+        + runs + " runs, median times:");
+
+    Set<Set<Route>> expected = airline.getMSTs();
+    System.out.printf("%-22s %10.1f ms%n", "kruskal",
+        median(airline, file, runs, () -> airline.getMSTs()));
+
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      double ms = median(airline, file, runs,
+          () -> pool.submit(() -> airline.getMSTsParallel()).get());
+      if (!pool.submit(() -> airline.getMSTsParallel()).get().equals(expected))
+        throw new IllegalStateException("Boruvka and Kruskal disagree");
+      pool.shutdown();
+      System.out.printf("%-22s %10.1f ms%n", "boruvka, " + threads + " thread(s)", ms);
+    }
+  }
+
+  private interface Run {
+    Object run() throws Exception;
+  }
+
+  // returns the median time of the runs. each run starts on a freshly loaded
+  // schedule, so the forest kept up to date since the previous run is not
+  // reused.
+  private static double median(AirlineSystem airline, File file, int runs,
+      Run run) throws Exception {
+    double[] ms = new double[runs];
+    for (int i = 0; i < runs; i++) {
+      airline.loadRoutes(file.getPath());
+
+      long start = System.nanoTime();
+      run.run();
+      ms[i] = (System.nanoTime() - start) / 1e6;
+    }
+    Arrays.sort(ms);
+    return ms[runs / 2];
+  }
+}
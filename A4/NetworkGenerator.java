@@ -0,0 +1,592 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates route networks of any size for load tests and benchmarks, in the
+ * file format read by loadRoutes or as a snapshot read by loadSnapshot. The
+ * same settings and seed always give the same network.
+ *
+ * Cities are scattered over a square area; the distance of a route is the
+ * straight-line distance between its cities, and its price is a base fare
+ * plus a fare per mile, scattered by a log-normal factor. The cities may be
+ * split into several components with no route between them; each component
+ * is connected, with one of three topologies:
+ * <ul>
+ * <li>UNIFORM: a random spanning tree plus routes between random cities;</li>
+ * <li>HUB_AND_SPOKE: a few hubs linked with each other, every other city
+ * linked to its nearest hub, and the remaining routes from cities to their
+ * next nearest hubs or to random hubs;</li>
+ * <li>SCALE_FREE: preferential attachment, in which each new city links to
+ * cities chosen in proportion to the routes they already have.</li>
+ * </ul>
+ *
+ * Usage: java NetworkGenerator cities output [--topology uniform|hubs|scalefree]
+ * [--degree d] [--hubs h] [--components k] [--seed s] [--area miles]
+ * [--base-fare dollars] [--fare-per-mile dollars] [--fare-spread sigma]
+ * [--format text|snapshot] [--flights per-day] [--min-connection minutes]
+ *
+ * With flights, the text format ends in a timetable read by Timetable.read;
+ * a snapshot holds the routes only.
+ */
+final public class NetworkGenerator {
+
+  public enum Topology {
+    UNIFORM, HUB_AND_SPOKE, SCALE_FREE
+  }
+
+  private final int cities;
+  private long seed = 1;
+  private Topology topology = Topology.HUB_AND_SPOKE;
+  private double degree = 4;
+  private int hubs; // 0 for one hub per 50 cities.
+  private int components = 1;
+  private double area = 3000;
+  private double baseFare = 100;
+  private double farePerMile = 0.25;
+  private double fareSpread = 0.25;
+  private int flights; // flights a day each way on every route, for a timetable.
+  private int minConnection = 45;
+
+  // the generated network, built on first use.
+  private boolean generated;
+  private float[] x;
+  private float[] y;
+  private int routes;
+  private int[] from;
+  private int[] to;
+  private int[] distance;
+  private double[] price;
+  private long[] keys; // open-addressing set of routes as min * cities + max + 1.
+  private Random random;
+
+  /**
+   * @param cities the number of cities, at least one per component
+   */
+  public NetworkGenerator(int cities) {
+    if (cities < 1)
+      throw new IllegalArgumentException("cities must be positive: " + cities);
+
+    this.cities = cities;
+  }
+
+  public NetworkGenerator seed(long seed) {
+    this.seed = seed;
+    return changed();
+  }
+
+  public NetworkGenerator topology(Topology topology) {
+    this.topology = topology;
+    return changed();
+  }
+
+  /**
+   * @param degree the average number of routes per city
+   */
+  public NetworkGenerator degree(double degree) {
+    if (degree < 0)
+      throw new IllegalArgumentException("degree must not be negative: " + degree);
+
+    this.degree = degree;
+    return changed();
+  }
+
+  /**
+   * @param hubs the number of hubs of each HUB_AND_SPOKE component, or 0 for
+   *             one hub per 50 cities
+   */
+  public NetworkGenerator hubs(int hubs) {
+    if (hubs < 0)
+      throw new IllegalArgumentException("hubs must not be negative: " + hubs);
+
+    this.hubs = hubs;
+    return changed();
+  }
+
+  /**
+   * @param components the number of components, which share the cities
+   *                   evenly and have no route between them
+   */
+  public NetworkGenerator components(int components) {
+    if (components < 1 || components > cities)
+      throw new IllegalArgumentException("components must be between 1 and " + cities
+          + ": " + components);
+
+    this.components = components;
+    return changed();
+  }
+
+  /**
+   * @param area the width of the square the cities are scattered over, in
+   *             miles
+   */
+  public NetworkGenerator area(double area) {
+    if (area <= 0)
+      throw new IllegalArgumentException("area must be positive: " + area);
+
+    this.area = area;
+    return changed();
+  }
+
+  /**
+   * sets the price of a route: (base + perMile * distance) times e to the
+   * power of a normal variable with standard deviation spread
+   *
+   * @param base    the fare of a route of no distance, in dollars
+   * @param perMile the fare per mile, in dollars
+   * @param spread  the standard deviation of the log of the scatter factor
+   */
+  public NetworkGenerator fares(double base, double perMile, double spread) {
+    if (base < 0 || perMile < 0 || spread < 0)
+      throw new IllegalArgumentException("fares must not be negative");
+
+    this.baseFare = base;
+    this.farePerMile = perMile;
+    this.fareSpread = spread;
+    return changed();
+  }
+
+  /**
+   * adds a timetable to the routes file: every route is flown a number of
+   * times a day in each direction, leaving between 5:00 and 23:00 and taking
+   * half an hour plus a minute per 8 miles. The flights do not change the
+   * routes generated for a seed.
+   *
+   * @param perDay        the flights a day each way on every route, 0 for no
+   *                      timetable
+   * @param minConnection the minimum connection time in minutes
+   */
+  public NetworkGenerator flights(int perDay, int minConnection) {
+    if (perDay < 0 || minConnection < 0)
+      throw new IllegalArgumentException("flights must not be negative");
+
+    this.flights = perDay;
+    this.minConnection = minConnection;
+    return this;
+  }
+
+  private NetworkGenerator changed() {
+    generated = false;
+    return this;
+  }
+
+  /**
+   * @return the number of routes of the network
+   */
+  public int routes() {
+    generate();
+    return routes;
+  }
+
+  /**
+   * writes the network in the file format read by loadRoutes, followed by a
+   * timetable for Timetable.read if flights were asked for
+   *
+   * @param fileName the String file name
+   */
+  public void writeRoutes(String fileName) throws IOException {
+    generate();
+    try (Writer out = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+      out.write(cities + "\n");
+      for (int i = 0; i < cities; i++)
+        out.write(name(i) + "\n");
+
+      StringBuilder line = new StringBuilder();
+      for (int k = 0; k < routes; k++) {
+        long cents = Math.round(price[k] * 100);
+        line.setLength(0);
+        line.append(from[k] + 1).append(' ').append(to[k] + 1).append(' ')
+            .append(distance[k]).append(' ').append(cents / 100).append('.')
+            .append((char) ('0' + cents / 10 % 10)).append((char) ('0' + cents % 10))
+            .append('\n');
+        out.append(line);
+      }
+
+      if (flights > 0) {
+        Random times = new Random(~seed); // a stream of its own, leaving the routes alone.
+        out.write("timetable " + minConnection + "\n");
+        for (int k = 0; k < routes; k++) {
+          for (int f = 0; f < 2 * flights; f++) {
+            int departure = 5 * 60 + times.nextInt(18 * 60);
+            int arrival = departure + 30 + distance[k] / 8;
+            line.setLength(0);
+            line.append((f % 2 == 0) ? from[k] + 1 : to[k] + 1).append(' ')
+                .append((f % 2 == 0) ? to[k] + 1 : from[k] + 1).append(' ')
+                .append(Timetable.time(departure)).append(' ').append(Timetable.time(arrival))
+                .append('\n');
+            out.append(line);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * writes the network as a snapshot read by loadSnapshot, without building
+   * an AirlineSystem first
+   *
+   * @param fileName the String file name
+   */
+  public void writeSnapshot(String fileName) throws IOException {
+    generate();
+    String[] names = new String[cities];
+    for (int i = 0; i < cities; i++)
+      names[i] = name(i);
+
+    AirlineSystem.writeSnapshot(names, routes, from, to, distance, price, fileName);
+  }
+
+  /**
+   * builds the network in a new AirlineSystem
+   *
+   * @param offHeap whether the system keeps its routes off the heap
+   * @return the AirlineSystem
+   */
+  public AirlineSystem build(boolean offHeap) throws IOException {
+    File file = File.createTempFile("network", ".txt");
+    try {
+      writeRoutes(file.getPath());
+      AirlineSystem airline = new AirlineSystem(offHeap);
+      if (!airline.loadRoutes(file.getPath()))
+        throw new IOException("could not load " + file);
+
+      return airline;
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static String name(int i) {
+    return "C" + i;
+  }
+
+  private void generate() {
+    if (generated)
+      return;
+
+    random = new Random(seed);
+    x = new float[cities];
+    y = new float[cities];
+    for (int i = 0; i < cities; i++) {
+      x[i] = (float) (random.nextDouble() * area);
+      y[i] = (float) (random.nextDouble() * area);
+    }
+
+    long wanted = Math.max(cities - components, Math.round(cities * degree / 2));
+    int capacity = (int) Math.min(Integer.MAX_VALUE - 8, wanted + 16);
+    from = new int[capacity];
+    to = new int[capacity];
+    distance = new int[capacity];
+    price = new double[capacity];
+    keys = new long[Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2];
+    routes = 0;
+
+    // the k-th component holds cities [k * cities / components, (k + 1) * ...).
+    for (int k = 0; k < components; k++) {
+      int lo = (int) ((long) k * cities / components);
+      int hi = (int) ((long) (k + 1) * cities / components);
+      long m = Math.round((hi - lo) * degree / 2);
+      switch (topology) {
+        case UNIFORM:
+          uniform(lo, hi, m);
+          break;
+        case SCALE_FREE:
+          scaleFree(lo, hi, m);
+          break;
+        default:
+          hubAndSpoke(lo, hi, m);
+      }
+    }
+
+    keys = null;
+    x = null;
+    y = null;
+    random = null;
+    generated = true;
+  }
+
+  // a random spanning tree plus random routes up to m.
+  private void uniform(int lo, int hi, long m) {
+    int s = hi - lo;
+    for (int i = lo + 1; i < hi; i++)
+      add(lo + random.nextInt(i - lo), i);
+
+    long max = (long) s * (s - 1) / 2;
+    for (long tries = 4 * m, count = s - 1; count < Math.min(m, max) && tries > 0; tries--)
+      if (add(lo + random.nextInt(s), lo + random.nextInt(s)))
+        count++;
+  }
+
+  // each city links to about m / s earlier cities, chosen in proportion to
+  // their routes by drawing from the list of route ends.
+  private void scaleFree(int lo, int hi, long m) {
+    int s = hi - lo;
+    int links = (int) Math.max(1, Math.round((double) m / s));
+    int[] ends = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2L * s * links + 2)];
+    int n = 0;
+    for (int i = lo + 1; i < hi; i++) {
+      int linked = 0;
+      for (int tries = 0; linked < Math.min(links, i - lo) && tries < 8 * links; tries++) {
+        // the first link of the first few cities picks uniformly, so that
+        // the draw has something to draw from.
+        int j = (n == 0 || random.nextInt(2 * links + 1) == 0) ? lo + random.nextInt(i - lo)
+            : ends[random.nextInt(n)];
+        if (add(i, j)) {
+          linked++;
+          if (n + 2 <= ends.length) {
+            ends[n++] = i;
+            ends[n++] = j;
+          }
+        }
+      }
+    }
+  }
+
+  // hubs linked with each other, then every other city to its nearest hub,
+  // then routes from random cities to their next nearest hubs or to random
+  // hubs up to m.
+  private void hubAndSpoke(int lo, int hi, long m) {
+    int s = hi - lo;
+    int h = Math.min(s, (hubs > 0) ? hubs : Math.max(1, s / 50));
+    int before = routes;
+    HubGrid grid = new HubGrid(lo, h);
+
+    // a spanning tree linking each hub to the nearest hub before it, then
+    // each hub to its nearest hubs, up to about twice the average degree.
+    for (int i = lo + 1; i < lo + h; i++)
+      add(grid.nearest(x[i], y[i], 1, i)[0], i);
+    int hubDegree = (int) Math.min(h - 1, Math.max(2, Math.round(2 * degree)));
+    for (int i = lo; i < lo + h; i++)
+      for (int j : grid.nearest(x[i], y[i], hubDegree / 2 + 1, hi))
+        add(i, j);
+
+    for (int i = lo + h; i < hi; i++)
+      add(i, grid.nearest(x[i], y[i], 1, hi)[0]);
+
+    long count = routes - before;
+    for (long tries = 4 * m; count < m && tries > 0 && s > h; tries--) {
+      int i = lo + h + random.nextInt(s - h);
+      int hub;
+      if (random.nextInt(4) != 0) {
+        int[] near = grid.nearest(x[i], y[i], Math.min(h, 3), hi);
+        hub = near[random.nextInt(near.length)];
+      } else {
+        hub = lo + random.nextInt(h);
+      }
+      if (add(i, hub))
+        count++;
+    }
+  }
+
+  // adds the route a-b unless a == b or it is already there; returns whether
+  // it was added.
+  private boolean add(int a, int b) {
+    if (a == b)
+      return false;
+
+    // grow the table first, so that the slot found below is in the table
+    // the key is stored in.
+    if (2L * (routes + 1) > keys.length)
+      rehash();
+
+    long key = (long) Math.min(a, b) * cities + Math.max(a, b) + 1;
+    int mask = keys.length - 1;
+    int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (keys[slot] != 0) {
+      if (keys[slot] == key)
+        return false;
+      slot = (slot + 1) & mask;
+    }
+
+    if (routes == from.length) {
+      int n = (int) Math.min(Integer.MAX_VALUE - 8, routes * 2L);
+      from = Arrays.copyOf(from, n);
+      to = Arrays.copyOf(to, n);
+      distance = Arrays.copyOf(distance, n);
+      price = Arrays.copyOf(price, n);
+    }
+
+    keys[slot] = key;
+    double miles = Math.hypot(x[a] - x[b], y[a] - y[b]);
+    double fare = (baseFare + farePerMile * miles) * Math.exp(fareSpread * random.nextGaussian());
+    from[routes] = a;
+    to[routes] = b;
+    distance[routes] = (int) Math.max(1, Math.round(miles));
+    price[routes++] = Math.max(1, Math.round(fare * 100)) / 100.0;
+    return true;
+  }
+
+  private void rehash() {
+    long[] old = keys;
+    keys = new long[old.length * 2];
+    int mask = keys.length - 1;
+    for (long key : old) {
+      if (key == 0)
+        continue;
+
+      int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+      while (keys[slot] != 0)
+        slot = (slot + 1) & mask;
+      keys[slot] = key;
+    }
+  }
+
+  /*
+   * The hubs of one component bucketed in a square grid of about one hub per
+   * cell, for finding the hubs nearest to a point by searching rings of
+   * cells outwards.
+   */
+  private final class HubGrid {
+    private final int side;
+    private final int[] start; // hubs of cell c are cells[start[c]..start[c + 1]).
+    private final int[] cells;
+
+    HubGrid(int lo, int h) {
+      side = Math.max(1, (int) Math.sqrt(h));
+      start = new int[side * side + 1];
+      cells = new int[h];
+      for (int i = lo; i < lo + h; i++)
+        start[cell(i) + 1]++;
+      for (int c = 0; c < side * side; c++)
+        start[c + 1] += start[c];
+
+      int[] next = Arrays.copyOf(start, side * side);
+      for (int i = lo; i < lo + h; i++)
+        cells[next[cell(i)]++] = i;
+    }
+
+    private int coordinate(float v) {
+      return Math.min(side - 1, (int) (v / area * side));
+    }
+
+    private int cell(int i) {
+      return coordinate(y[i]) * side + coordinate(x[i]);
+    }
+
+    // returns up to k hubs below the given index nearest to (px, py),
+    // nearest first.
+    int[] nearest(float px, float py, int k, int below) {
+      int[] best = new int[k];
+      double[] bestDistance = new double[k];
+      Arrays.fill(bestDistance, Double.MAX_VALUE);
+      int found = 0;
+      int cx = coordinate(px);
+      int cy = coordinate(py);
+      double cellWidth = area / side;
+      for (int ring = 0; ring < side; ring++) {
+        // every hub in a further ring is at least this far away.
+        if (found == k && (ring - 1) * cellWidth > bestDistance[k - 1])
+          break;
+
+        for (int gy = cy - ring; gy <= cy + ring; gy++) {
+          for (int gx = cx - ring; gx <= cx + ring; gx++) {
+            if (gy < 0 || gy >= side || gx < 0 || gx >= side
+                || (Math.abs(gy - cy) != ring && Math.abs(gx - cx) != ring))
+              continue;
+
+            int c = gy * side + gx;
+            for (int p = start[c]; p < start[c + 1]; p++) {
+              int hub = cells[p];
+              if (hub >= below)
+                continue;
+
+              double d = Math.hypot(x[hub] - px, y[hub] - py);
+              if (found < k || d < bestDistance[k - 1]) {
+                int q = (found < k) ? found++ : k - 1;
+                while (q > 0 && bestDistance[q - 1] > d) {
+                  best[q] = best[q - 1];
+                  bestDistance[q] = bestDistance[q - 1];
+                  q--;
+                }
+                best[q] = hub;
+                bestDistance[q] = d;
+              }
+            }
+          }
+        }
+      }
+
+      return (found == k) ? best : Arrays.copyOf(best, found);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: java NetworkGenerator cities output"
+          + " [--topology uniform|hubs|scalefree] [--degree d] [--hubs h]"
+          + " [--components k] [--seed s] [--area miles] [--base-fare dollars]"
+          + " [--fare-per-mile dollars] [--fare-spread sigma] [--format text|snapshot]"
+          + " [--flights per-day] [--min-connection minutes]");
+      System.exit(2);
+    }
+
+    NetworkGenerator generator = new NetworkGenerator(Integer.parseInt(args[0]));
+    String output = args[1];
+    boolean snapshot = false;
+    double base = 100;
+    double perMile = 0.25;
+    double spread = 0.25;
+    int flights = 0;
+    int minConnection = 45;
+    for (int i = 2; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--topology":
+          generator.topology(value.equals("uniform") ? Topology.UNIFORM
+              : value.equals("scalefree") ? Topology.SCALE_FREE
+              : value.equals("hubs") ? Topology.HUB_AND_SPOKE
+              : Topology.valueOf(value.toUpperCase()));
+          break;
+        case "--degree":
+          generator.degree(Double.parseDouble(value));
+          break;
+        case "--hubs":
+          generator.hubs(Integer.parseInt(value));
+          break;
+        case "--components":
+          generator.components(Integer.parseInt(value));
+          break;
+        case "--seed":
+          generator.seed(Long.parseLong(value));
+          break;
+        case "--area":
+          generator.area(Double.parseDouble(value));
+          break;
+        case "--base-fare":
+          base = Double.parseDouble(value);
+          break;
+        case "--fare-per-mile":
+          perMile = Double.parseDouble(value);
+          break;
+        case "--fare-spread":
+          spread = Double.parseDouble(value);
+          break;
+        case "--format":
+          snapshot = value.equals("snapshot");
+          break;
+        case "--flights":
+          flights = Integer.parseInt(value);
+          break;
+        case "--min-connection":
+          minConnection = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    generator.fares(base, perMile, spread);
+    generator.flights(flights, minConnection);
+
+    long start = System.nanoTime();
+    if (snapshot)
+      generator.writeSnapshot(output);
+    else
+      generator.writeRoutes(output);
+    System.out.printf("%d cities, %d routes written to %s in %.1f s%n", generator.cities,
+        generator.routes(), output, (System.nanoTime() - start) / 1e9);
+  }
+}
@@ -1,26 +1,63 @@
 
-import java.util.Objects;
-
+/**
+ * A non-stop route between two cities, read in the direction from source to
+ * destination. Routes are immutable, and the graph keeps one object for both
+ * directions of a route; the reverse direction is a new, short-lived object
+ * each time it is asked for, so the graph never holds two.
+ */
 final public class Route implements Comparable<Route> {
-  public String source;
-  public String destination;
-  public int distance;
-  public double price;
+  public final String source;
+  public final String destination;
+  public final int distance;
+  public final double price;
+  final long cents; // the price in cents, which the MST algorithms compare exactly.
 
   public Route(String source, String destination, int distance, double price) {
     this.source = source;
     this.destination = destination;
     this.distance = distance;
     this.price = price;
+    this.cents = Math.round(price * 100);
+  }
+
+  // creates the reverse direction of a route.
+  private Route(Route route) {
+    this.source = route.destination;
+    this.destination = route.source;
+    this.distance = route.distance;
+    this.price = route.price;
+    this.cents = route.cents;
+  }
+
+  /**
+   * returns this route read in the other direction
+   *
+   * @return the Route from destination to source
+   */
+  public Route reverse() {
+    return new Route(this);
+  }
+
+  /**
+   * returns this route read in the direction out of a given city
+   *
+   * @param city the String name of one end of the route
+   * @return this Route if it leaves city and its reverse otherwise
+   */
+  public Route from(String city) {
+    return (source == city || source.equals(city)) ? this : reverse();
   }
 
   @Override
   public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
     if (other instanceof Route) {
       Route otherRoute = (Route) other;
-      return equalEndPoints(otherRoute)
-          && distance == otherRoute.distance
-          && price == otherRoute.price;
+      return distance == otherRoute.distance
+          && price == otherRoute.price
+          && equalEndPoints(otherRoute);
     }
     return false;
   }
@@ -34,8 +71,10 @@ final public class Route implements Comparable<Route> {
 
   @Override
   public int hashCode() {
-    return Objects.hash(source.hashCode() + destination.hashCode(),
-        distance, price);
+    // the same in both directions; String caches its own hash.
+    int h = source.hashCode() + destination.hashCode();
+    h = 31 * h + distance;
+    return 31 * h + Double.hashCode(price);
   }
 
   @Override
@@ -47,12 +86,7 @@ final public class Route implements Comparable<Route> {
 
   @Override
   public int compareTo(Route other) {
-    // Compare based on price
-    if (this.price < other.price) {
-      return -1;
-    } else if (this.price > other.price) {
-      return 1;
-    }
-    return 0; // Prices are equal
+    // Compare based on price, in cents as the MST algorithms do.
+    return Long.compare(cents, other.cents);
   }
 }
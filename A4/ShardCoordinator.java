@@ -0,0 +1,935 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers cheapestItinerary over a network split into shards, each held by
+ * an AirlineServer of its own, usually a separate process, so that no one
+ * JVM needs the whole graph.
+ *
+ * plan() splits a network with AirlineSystem.partition and writes a routes
+ * file for each shard, holding its cities and the routes between them, and a
+ * plan file with the shard of every city and the routes cut between shards.
+ * The coordinator reads only the plan. The cities at the ends of cut routes
+ * are the boundary; at start the coordinator asks each worker the fares
+ * between every two boundary cities of its shard, which with the cut routes
+ * make an overlay graph of the boundary cities. An itinerary leaves a shard
+ * only over a cut route, so a query needs the fares from the source to the
+ * boundary of its shard and from the boundary of the destination's shard to
+ * the destination, asked of the two workers at once, and a search of the
+ * overlay in between. The legs within each shard are then asked of its
+ * worker.
+ *
+ * Usage: java ShardCoordinator routes-file shards [--dir d] [--check n]
+ * [--seed s] [--worker-option option]...
+ */
+final public class ShardCoordinator implements Closeable {
+
+  private static final long UNREACHABLE = Long.MAX_VALUE;
+  private static final int SOURCES_PER_REQUEST = 64; // boundary fares asked at once.
+  private static final int NEAREST = 32; // boundary cities tried for a shorter way.
+
+  private final HttpClient client;
+  private final ExecutorService requests; // the threads of the client.
+  private final ExecutorService executor; // the threads that build the overlay.
+  private final URI[] workers;
+  private final Map<String, Integer> shards; // the shard of every city.
+  private final String[] boundary; // the city of each overlay node.
+  private final Map<String, Integer> nodes; // the overlay node of each boundary city.
+  private final int[][] members; // members[s] = the overlay nodes in shard s, consecutive.
+  private final int cutRoutes;
+
+  // the overlay graph; the edges out of node u are first[u] to first[u + 1] - 1.
+  private final int[] first;
+  private final int[] target;
+  private final long[] cents;
+  private final Route[] cut; // the route of an edge between shards, null within a shard.
+
+  /**
+   * connects to the workers of a plan and builds the overlay graph. The
+   * coordinator holds threads until it is closed.
+   *
+   * @param planFile the plan file written by plan()
+   * @param workers  the URI of the AirlineServer of each shard, in shard order
+   */
+  public ShardCoordinator(String planFile, List<URI> workers) throws IOException {
+    this.workers = workers.toArray(new URI[0]);
+    this.shards = new HashMap<String, Integer>();
+
+    List<Route> routes = new ArrayList<Route>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(planFile))) {
+      int k = Integer.parseInt(reader.readLine().trim());
+      if (k != this.workers.length)
+        throw new IllegalArgumentException("the plan has " + k + " shards but "
+            + this.workers.length + " workers are given");
+
+      String[] names = new String[Integer.parseInt(reader.readLine().trim())];
+      for (int i = 0; i < names.length; i++) {
+        String line = reader.readLine();
+        int space = line.indexOf(' ');
+        names[i] = line.substring(space + 1);
+        shards.put(names[i], Integer.parseInt(line.substring(0, space)));
+      }
+
+      String line;
+      while ((line = reader.readLine()) != null && !line.isBlank()) {
+        String[] fields = line.trim().split("\\s+");
+        routes.add(new Route(names[Integer.parseInt(fields[0]) - 1],
+            names[Integer.parseInt(fields[1]) - 1], Integer.parseInt(fields[2]),
+            Double.parseDouble(fields[3])));
+      }
+    }
+    this.cutRoutes = routes.size();
+
+    // number the boundary cities shard by shard.
+    nodes = new HashMap<String, Integer>();
+    List<List<String>> byShard = new ArrayList<List<String>>();
+    for (int s = 0; s < this.workers.length; s++)
+      byShard.add(new ArrayList<String>());
+    for (Route route : routes)
+      for (String city : new String[] { route.source, route.destination })
+        if (nodes.putIfAbsent(city, -1) == null)
+          byShard.get(shards.get(city)).add(city);
+    boundary = new String[nodes.size()];
+    members = new int[this.workers.length][];
+    int n = 0;
+    for (int s = 0; s < members.length; s++) {
+      members[s] = new int[byShard.get(s).size()];
+      for (int i = 0; i < members[s].length; i++) {
+        boundary[n] = byShard.get(s).get(i);
+        nodes.put(boundary[n], n);
+        members[s][i] = n++;
+      }
+    }
+
+    this.requests = AirlineServer.newRequestExecutor();
+    this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+        .executor(requests).build();
+    this.executor = AirlineServer.newRequestExecutor();
+
+    // the overlay: the pairs of boundary cities of a shard whose fare does
+    // not already follow from other pairs, and both directions of every cut
+    // route.
+    int[] degree = new int[boundary.length + 1];
+    long[][][] fares = new long[members.length][][];
+    boolean[][][] needed = new boolean[members.length][][];
+    try {
+      // the fares between the boundary cities of each shard, from all the
+      // workers at once.
+      List<CompletableFuture<long[][]>> tables = new ArrayList<CompletableFuture<long[][]>>();
+      for (int s = 0; s < members.length; s++) {
+        List<String> cities = byShard.get(s);
+        int shard = s;
+        tables.add(CompletableFuture.supplyAsync(() -> {
+          long[][] table = new long[cities.size()][];
+          for (int i = 0; i < table.length; i += SOURCES_PER_REQUEST) {
+            List<String> from = cities.subList(i, Math.min(table.length, i + SOURCES_PER_REQUEST));
+            long[][] rows = fares(shard, from, cities).join();
+            System.arraycopy(rows, 0, table, i, rows.length);
+          }
+          return table;
+        }, executor));
+      }
+
+      for (int s = 0; s < members.length; s++) {
+        fares[s] = await(tables.get(s));
+        needed[s] = needed(fares[s]);
+        for (int i = 0; i < members[s].length; i++)
+          for (int j = 0; j < members[s].length; j++)
+            if (needed[s][i][j])
+              degree[members[s][i] + 1]++;
+      }
+    } catch (IOException | RuntimeException e) {
+      close(); // no one else can close a coordinator that was never built.
+      throw e;
+    }
+    for (Route route : routes) {
+      degree[nodes.get(route.source) + 1]++;
+      degree[nodes.get(route.destination) + 1]++;
+    }
+    for (int u = 0; u < boundary.length; u++)
+      degree[u + 1] += degree[u];
+
+    first = degree.clone();
+    target = new int[first[boundary.length]];
+    cents = new long[target.length];
+    cut = new Route[target.length];
+    int[] next = Arrays.copyOf(first, boundary.length);
+    for (int s = 0; s < members.length; s++) {
+      for (int i = 0; i < members[s].length; i++) {
+        for (int j = 0; j < members[s].length; j++) {
+          if (needed[s][i][j]) {
+            int e = next[members[s][i]]++;
+            target[e] = members[s][j];
+            cents[e] = fares[s][i][j];
+          }
+        }
+      }
+    }
+    for (Route route : routes) {
+      for (Route direction : new Route[] { route, route.reverse() }) {
+        int e = next[nodes.get(direction.source)]++;
+        target[e] = nodes.get(direction.destination);
+        cents[e] = direction.cents;
+        cut[e] = direction;
+      }
+    }
+  }
+
+  // which fares between the boundary cities of a shard the overlay needs as
+  // edges. The fare from a to b is not needed if the same fare goes through
+  // another boundary city c, from a to c and from c to b, both fares above
+  // zero: those two edges, or the edges they are in turn replaced with, keep
+  // the fare. Only the cities nearest a are tried as c, which catches most
+  // pairs at a fraction of the cost of trying them all.
+  private static boolean[][] needed(long[][] fares) {
+    int m = fares.length;
+    boolean[][] needed = new boolean[m][m];
+    Integer[] order = new Integer[m];
+    int[] near = new int[Math.min(m, NEAREST)];
+    for (int a = 0; a < m; a++) {
+      long[] from = fares[a];
+      for (int j = 0; j < m; j++)
+        order[j] = j;
+      Arrays.sort(order, (x, y) -> Long.compare(from[x], from[y]));
+      int n = 0;
+      for (int j = 0; j < m && n < near.length; j++)
+        if (order[j] != a && from[order[j]] > 0 && from[order[j]] != UNREACHABLE)
+          near[n++] = order[j];
+
+      for (int b = 0; b < m; b++) {
+        if (b == a || from[b] == UNREACHABLE)
+          continue;
+
+        needed[a][b] = true;
+        for (int i = 0; i < n && from[near[i]] < from[b]; i++) {
+          int c = near[i];
+          if (c != b && fares[c][b] > 0 && fares[c][b] != UNREACHABLE
+              && from[c] + fares[c][b] == from[b]) {
+            needed[a][b] = false;
+            break;
+          }
+        }
+      }
+    }
+    return needed;
+  }
+
+  /**
+   * finds a cheapest path between two cities, like
+   * AirlineSystem.cheapestItinerary but returning one path of the lowest
+   * price rather than all of them
+   *
+   * @param source      the String source city name
+   * @param destination the String destination city name
+   * @return a Set<ArrayList<Route>> of one cheapest path, empty if no path
+   *         connects the two cities, or null if they are the same city
+   * @throws CityNotFoundException if any of the two cities are not found in
+   *                               the plan
+   * @throws IOException           if a worker cannot be reached
+   */
+  public Set<ArrayList<Route>> cheapestItinerary(String source, String destination)
+      throws CityNotFoundException, IOException {
+    int s = shard(source);
+    int d = shard(destination);
+    if (source.equals(destination))
+      return null;
+
+    // out[i] = the fare from the source to boundary city i of its shard, and
+    // out[direct] the fare to the destination if it is in the same shard,
+    // asked for last unless it is a boundary city already; in[i] = the fare
+    // from boundary city i of the destination's shard.
+    List<String> exits = names(members[s]);
+    int direct = -1;
+    if (s == d) {
+      Integer node = nodes.get(destination);
+      direct = (node != null) ? node - members[s][0] : exits.size();
+      if (node == null)
+        exits.add(destination);
+    }
+    CompletableFuture<long[][]> outFuture = fares(s, List.of(source), exits);
+    CompletableFuture<long[][]> inFuture = fares(d, List.of(destination), names(members[d]));
+    long[] out = await(outFuture)[0];
+    long[] in = await(inFuture)[0];
+
+    // Dijkstra over the overlay, with the destination as node b. A node
+    // reached straight from the source has no previous node (-1).
+    int b = boundary.length;
+    long[] dist = new long[b + 1];
+    int[] previous = new int[b + 1];
+    int[] edge = new int[b + 1];
+    Arrays.fill(dist, UNREACHABLE);
+    Arrays.fill(previous, -1);
+    Arrays.fill(edge, -1);
+    Heap heap = new Heap();
+    for (int i = 0; i < members[s].length; i++) {
+      if (out[i] != UNREACHABLE) {
+        dist[members[s][i]] = out[i];
+        heap.push(out[i], members[s][i]);
+      }
+    }
+    if (s == d)
+      dist[b] = out[direct];
+    int[] entry = new int[b]; // entry[u] = 1 + the index of u in members[d].
+    for (int i = 0; i < members[d].length; i++)
+      entry[members[d][i]] = i + 1;
+
+    boolean[] settled = new boolean[b];
+    while (!heap.isEmpty() && heap.peekKey() < dist[b]) {
+      int u = heap.pop();
+      if (settled[u])
+        continue;
+
+      settled[u] = true;
+      if (entry[u] != 0 && in[entry[u] - 1] != UNREACHABLE
+          && dist[u] + in[entry[u] - 1] < dist[b]) {
+        dist[b] = dist[u] + in[entry[u] - 1];
+        previous[b] = u;
+      }
+      for (int e = first[u]; e < first[u + 1]; e++) {
+        int v = target[e];
+        if (dist[u] + cents[e] < dist[v]) {
+          dist[v] = dist[u] + cents[e];
+          previous[v] = u;
+          edge[v] = e;
+          heap.push(dist[v], v);
+        }
+      }
+    }
+
+    Set<ArrayList<Route>> itineraries = new LinkedHashSet<ArrayList<Route>>();
+    if (dist[b] == UNREACHABLE)
+      return itineraries;
+
+    // the steps from the destination back to the source; a step within a
+    // shard is asked of its worker, a cut route is known here.
+    List<CompletableFuture<List<Route>>> steps = new ArrayList<CompletableFuture<List<Route>>>();
+    int v = b;
+    while (v != -1) {
+      int u = previous[v];
+      String to = (v == b) ? destination : boundary[v];
+      String from = (u == -1) ? source : boundary[u];
+      if (v != b && edge[v] != -1 && cut[edge[v]] != null)
+        steps.add(CompletableFuture.completedFuture(List.of(cut[edge[v]])));
+      else if (!from.equals(to))
+        steps.add(legs(shards.get(to), from, to));
+      v = u;
+    }
+
+    ArrayList<Route> path = new ArrayList<Route>();
+    for (int i = steps.size() - 1; i >= 0; i--)
+      path.addAll(await(steps.get(i)));
+    itineraries.add(path);
+    return itineraries;
+  }
+
+  /**
+   * @return the number of shards
+   */
+  public int shards() {
+    return workers.length;
+  }
+
+  /**
+   * @return the number of boundary cities, the nodes of the overlay graph
+   */
+  public int boundarySize() {
+    return boundary.length;
+  }
+
+  /**
+   * stops the threads of the coordinator; the workers keep running
+   */
+  public void close() {
+    executor.shutdown();
+    requests.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d cities in %d shards, %d routes cut, %d boundary cities,"
+        + " %d overlay edges", shards.size(), workers.length, cutRoutes, boundary.length,
+        target.length);
+  }
+
+  private int shard(String city) throws CityNotFoundException {
+    Integer s = shards.get(city);
+    if (s == null)
+      throw new CityNotFoundException(city);
+
+    return s;
+  }
+
+  private List<String> names(int[] nodes) {
+    List<String> names = new ArrayList<String>(nodes.length + 1);
+    for (int u : nodes)
+      names.add(boundary[u]);
+    return names;
+  }
+
+  // the fares in cents from each source to each destination within shard s,
+  // UNREACHABLE where the shard connects no itinerary.
+  private CompletableFuture<long[][]> fares(int s, List<String> from, List<String> to) {
+    if (to.isEmpty())
+      return CompletableFuture.completedFuture(new long[from.size()][0]);
+
+    // the overlay needs every fare, so the shard's timeout does not apply.
+    return get(s, "/fares?from=" + join(from) + "&to=" + join(to)
+        + "&timeout=0").thenApply(json -> {
+      List<?> rows = (List<?>) json.get("fares");
+      long[][] fares = new long[rows.size()][];
+      for (int i = 0; i < fares.length; i++) {
+        List<?> row = (List<?>) rows.get(i);
+        fares[i] = new long[row.size()];
+        for (int j = 0; j < fares[i].length; j++)
+          fares[i][j] = (row.get(j) == null) ? UNREACHABLE
+              : Math.round((Double) row.get(j) * 100);
+      }
+      return fares;
+    });
+  }
+
+  // the legs of a cheapest itinerary within shard s.
+  private CompletableFuture<List<Route>> legs(int s, String from, String to) {
+    return get(s, "/cheapest?from=" + join(List.of(from)) + "&to=" + join(List.of(to))
+        + "&timeout=0").thenApply(json -> {
+          List<?> itineraries = (List<?>) json.get("itineraries");
+          if (itineraries.isEmpty())
+            throw new IllegalStateException("shard " + s + " has no itinerary from " + from
+                + " to " + to + " though it gave a fare");
+
+          List<Route> legs = new ArrayList<Route>();
+          for (Object leg : (List<?>) ((Map<?, ?>) itineraries.get(0)).get("legs")) {
+            Map<?, ?> route = (Map<?, ?>) leg;
+            legs.add(new Route((String) route.get("from"), (String) route.get("to"),
+                ((Double) route.get("distance")).intValue(), (Double) route.get("price")));
+          }
+          return legs;
+        });
+  }
+
+  private CompletableFuture<Map<?, ?>> get(int s, String pathAndQuery) {
+    URI uri = workers[s].resolve(pathAndQuery);
+    return client.sendAsync(HttpRequest.newBuilder(uri).build(),
+        HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+          if (response.statusCode() != 200)
+            throw new IllegalStateException(uri + " answered " + response.statusCode() + ": "
+                + response.body());
+          return (Map<?, ?>) JsonReader.read(response.body());
+        });
+  }
+
+  private static String join(List<String> names) {
+    StringBuilder s = new StringBuilder();
+    for (String name : names) {
+      if (s.length() > 0)
+        s.append(',');
+      s.append(URLEncoder.encode(name, StandardCharsets.UTF_8));
+    }
+    return s.toString();
+  }
+
+  // waits for a request to a worker, reporting its failure as an IOException.
+  private static <T> T await(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a worker");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      while (cause instanceof CompletionException && cause.getCause() != null)
+        cause = cause.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new IOException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * splits a network into shards with AirlineSystem.partition and writes
+   * shard-0.txt, shard-1.txt... in the format read by loadRoutes, and
+   * plan.txt, which holds the number of shards, the number of cities, a
+   * line "shard name" for each city, and the routes between shards as
+   * "i j distance price", numbering the cities from 1 in the order listed.
+   *
+   * @param airline   the AirlineSystem holding the whole network
+   * @param shards    the number of shards
+   * @param directory the directory to write the files into
+   * @return a Map<String, Integer> from each city name to its shard
+   */
+  public static Map<String, Integer> plan(AirlineSystem airline, int shards, String directory)
+      throws IOException {
+    Map<String, Integer> shard = airline.partition(shards);
+    List<List<String>> cities = new ArrayList<List<String>>();
+    for (int s = 0; s < shards; s++)
+      cities.add(new ArrayList<String>());
+    for (String city : airline.retrieveCityNames())
+      cities.get(shard.get(city)).add(city);
+
+    // number the cities within their shard and in the plan, from 1.
+    Map<String, Integer> local = new HashMap<String, Integer>(2 * shard.size());
+    Map<String, Integer> global = new HashMap<String, Integer>(2 * shard.size());
+    for (List<String> list : cities)
+      for (int i = 0; i < list.size(); i++)
+        local.put(list.get(i), i + 1);
+
+    Files.createDirectories(Paths.get(directory));
+    File planFile = new File(directory, "plan.txt");
+    try (PrintWriter plan = new PrintWriter(new BufferedWriter(new FileWriter(planFile)))) {
+      plan.println(shards);
+      plan.println(shard.size());
+      for (int s = 0; s < shards; s++) {
+        for (String city : cities.get(s)) {
+          global.put(city, global.size() + 1);
+          plan.println(s + " " + city);
+        }
+      }
+
+      for (int s = 0; s < shards; s++) {
+        File shardFile = new File(directory, "shard-" + s + ".txt");
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+            new FileWriter(shardFile)))) {
+          writer.println(cities.get(s).size());
+          for (String city : cities.get(s))
+            writer.println(city);
+
+          // write each route once, from its lower numbered end.
+          for (String city : cities.get(s)) {
+            for (Route route : airline.retrieveDirectRoutesFrom(city)) {
+              String other = route.destination;
+              String line = " " + route.distance + " " + route.price;
+              if (shard.get(other) != s) {
+                if (global.get(city) < global.get(other))
+                  plan.println(global.get(city) + " " + global.get(other) + line);
+              } else if (local.get(city) < local.get(other)) {
+                writer.println(local.get(city) + " " + local.get(other) + line);
+              }
+            }
+          }
+          if (writer.checkError())
+            throw new IOException("cannot write " + shardFile);
+        } catch (CityNotFoundException e) {
+          throw new IllegalStateException("the network changed while it was split", e);
+        }
+      }
+      if (plan.checkError())
+        throw new IOException("cannot write " + planFile);
+    }
+    return shard;
+  }
+
+  /**
+   * Worker processes, one AirlineServer per shard of a plan, started on
+   * free ports of this machine. Closing the cluster stops them.
+   */
+  public static final class Cluster implements Closeable {
+    private final List<Process> processes = new ArrayList<Process>();
+    private final List<URI> uris = new ArrayList<URI>();
+
+    /**
+     * starts a worker for each shard written by plan() and waits until all
+     * of them are listening
+     *
+     * @param directory the directory plan() wrote into
+     * @param shards    the number of shards
+     * @param options   options for the JVM of each worker, such as -Xmx1g
+     */
+    public static Cluster start(String directory, int shards, List<String> options)
+        throws IOException {
+      String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+      Cluster cluster = new Cluster();
+      try {
+        for (int s = 0; s < shards; s++) {
+          List<String> command = new ArrayList<String>();
+          command.add(java);
+          command.addAll(options);
+          command.addAll(List.of("-cp", System.getProperty("java.class.path"), "AirlineServer",
+              new File(directory, "shard-" + s + ".txt").getPath(), "--port", "0"));
+          cluster.processes.add(new ProcessBuilder(command).redirectErrorStream(true).start());
+        }
+        for (int s = 0; s < shards; s++)
+          cluster.uris.add(listening(cluster.processes.get(s), s));
+      } catch (IOException | RuntimeException e) {
+        cluster.close();
+        throw e;
+      }
+      return cluster;
+    }
+
+    // reads the output of a worker up to the line giving its port, then
+    // keeps reading it in the background so that the worker never blocks on
+    // a full pipe.
+    private static URI listening(Process process, int shard) throws IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+          StandardCharsets.UTF_8));
+      String prefix = "listening on ";
+      String line;
+      StringBuilder output = new StringBuilder();
+      while ((line = reader.readLine()) != null && !line.startsWith(prefix))
+        output.append('\n').append(line);
+      if (line == null)
+        throw new IOException("worker " + shard + " exited:" + output);
+
+      Thread drain = new Thread(() -> {
+        try {
+          while (reader.readLine() != null) {
+          }
+        } catch (IOException e) {
+          // the worker stopped.
+        }
+      }, "shard-" + shard + "-output");
+      drain.setDaemon(true);
+      drain.start();
+      return URI.create(line.substring(prefix.length()).split(" ")[0]);
+    }
+
+    /**
+     * @return the URI of each worker, in shard order
+     */
+    public List<URI> uris() {
+      return uris;
+    }
+
+    @Override
+    public void close() {
+      for (Process process : processes)
+        process.destroy();
+      for (Process process : processes) {
+        try {
+          if (!process.waitFor(10, TimeUnit.SECONDS))
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+          process.destroyForcibly();
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /*
+   * A binary min-heap of overlay nodes keyed by fare, in which a node may
+   * appear more than once; the stale entries are skipped when popped.
+   */
+  private static final class Heap {
+    private long[] keys = new long[64];
+    private int[] values = new int[64];
+    private int n;
+
+    boolean isEmpty() {
+      return n == 0;
+    }
+
+    long peekKey() {
+      return keys[0];
+    }
+
+    void push(long key, int value) {
+      if (n == keys.length) {
+        keys = Arrays.copyOf(keys, 2 * n);
+        values = Arrays.copyOf(values, 2 * n);
+      }
+      int i = n++;
+      while (i > 0 && keys[(i - 1) / 2] > key) {
+        keys[i] = keys[(i - 1) / 2];
+        values[i] = values[(i - 1) / 2];
+        i = (i - 1) / 2;
+      }
+      keys[i] = key;
+      values[i] = value;
+    }
+
+    int pop() {
+      int top = values[0];
+      long key = keys[--n];
+      int value = values[n];
+      int i = 0;
+      while (2 * i + 1 < n) {
+        int child = 2 * i + 1;
+        if (child + 1 < n && keys[child + 1] < keys[child])
+          child++;
+        if (keys[child] >= key)
+          break;
+        keys[i] = keys[child];
+        values[i] = values[child];
+        i = child;
+      }
+      keys[i] = key;
+      values[i] = value;
+      return top;
+    }
+  }
+
+  /*
+   * Reads the JSON the workers answer with: objects become Maps, arrays
+   * Lists, numbers Doubles.
+   */
+  private static final class JsonReader {
+    private final String s;
+    private int i;
+
+    private JsonReader(String s) {
+      this.s = s;
+    }
+
+    static Object read(String json) {
+      return new JsonReader(json).value();
+    }
+
+    private Object value() {
+      skip();
+      char c = s.charAt(i);
+      switch (c) {
+        case '{': {
+          Map<String, Object> map = new HashMap<String, Object>();
+          i++;
+          skip();
+          if (s.charAt(i) == '}') {
+            i++;
+            return map;
+          }
+          do {
+            String key = string();
+            next(); // the colon.
+            map.put(key, value());
+          } while (next() == ',');
+          return map;
+        }
+        case '[': {
+          List<Object> list = new ArrayList<Object>();
+          i++;
+          skip();
+          if (s.charAt(i) == ']') {
+            i++;
+            return list;
+          }
+          do {
+            list.add(value());
+          } while (next() == ',');
+          return list;
+        }
+        case '"':
+          return string();
+        case 't':
+          i += 4;
+          return Boolean.TRUE;
+        case 'f':
+          i += 5;
+          return Boolean.FALSE;
+        case 'n':
+          i += 4;
+          return null;
+        default: {
+          int start = i;
+          while (i < s.length() && "+-.0123456789eE".indexOf(s.charAt(i)) >= 0)
+            i++;
+          return Double.parseDouble(s.substring(start, i));
+        }
+      }
+    }
+
+    // the next character that is not white space, consumed.
+    private char next() {
+      skip();
+      return s.charAt(i++);
+    }
+
+    private String string() {
+      skip();
+      StringBuilder value = new StringBuilder();
+      for (i++; s.charAt(i) != '"'; i++) {
+        char c = s.charAt(i);
+        if (c == '\\') {
+          c = s.charAt(++i);
+          if (c == 'u') {
+            c = (char) Integer.parseInt(s.substring(i + 1, i + 5), 16);
+            i += 4;
+          } else if (c == 'n') {
+            c = '\n';
+          } else if (c == 'r') {
+            c = '\r';
+          } else if (c == 't') {
+            c = '\t';
+          }
+        }
+        value.append(c);
+      }
+      i++;
+      return value.toString();
+    }
+
+    private void skip() {
+      while (i < s.length() && Character.isWhitespace(s.charAt(i)))
+        i++;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: java ShardCoordinator routes-file shards [--dir d]"
+          + " [--check n] [--seed s] [--worker-option option]...");
+      System.exit(2);
+    }
+
+    int k = Integer.parseInt(args[1]);
+    String directory = null;
+    int check = 0;
+    long seed = 1;
+    List<String> options = new ArrayList<String>();
+    for (int i = 2; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--dir":
+          directory = value;
+          break;
+        case "--check":
+          check = Integer.parseInt(value);
+          break;
+        case "--seed":
+          seed = Long.parseLong(value);
+          break;
+        case "--worker-option":
+          options.add(value);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    if (directory == null)
+      directory = Files.createTempDirectory("shards").toString();
+
+    // the whole network is loaded only to split it, and to check the
+    // coordinator's answers against.
+    AirlineSystem airline = new AirlineSystem();
+    if (!airline.loadRoutes(args[0])) {
+      System.err.println("cannot read " + args[0]);
+      System.exit(1);
+    }
+    long start = System.nanoTime();
+    Map<String, Integer> plan = plan(airline, k, directory);
+    int[] sizes = new int[k];
+    for (int s : plan.values())
+      sizes[s]++;
+    System.out.printf("split into %s in %d ms, written to %s%n", Arrays.toString(sizes),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), directory);
+
+    try (Cluster cluster = Cluster.start(directory, k, options)) {
+      start = System.nanoTime();
+      try (ShardCoordinator coordinator = new ShardCoordinator(
+          new File(directory, "plan.txt").getPath(), cluster.uris())) {
+        System.out.printf("%s, overlay built in %d ms%n", coordinator,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (check > 0) {
+          check(coordinator, airline, check, seed);
+          return;
+        }
+
+        // answer "source,destination" lines from the standard input.
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+          String[] pair = line.split(",");
+          if (pair.length != 2)
+            continue;
+
+          try {
+            Set<ArrayList<Route>> itineraries = coordinator.cheapestItinerary(pair[0].trim(),
+                pair[1].trim());
+            if (itineraries == null || itineraries.isEmpty())
+              System.out.println("  none");
+            else
+              for (ArrayList<Route> itinerary : itineraries)
+                System.out.printf("  $%.2f: %s%n", price(itinerary) / 100.0, itinerary);
+          } catch (CityNotFoundException e) {
+            System.out.println("  unknown city " + e.getMessage());
+          }
+        }
+      }
+    }
+  }
+
+  // compares the coordinator with the whole network on random pairs of cities.
+  private static void check(ShardCoordinator coordinator, AirlineSystem airline, int n,
+      long seed) throws Exception {
+    String[] cities = airline.retrieveCityNames().toArray(new String[0]);
+    Random random = new Random(seed);
+    long sharded = 0;
+    long whole = 0;
+    int wrong = 0;
+    for (int q = 0; q < n; q++) {
+      String from = cities[random.nextInt(cities.length)];
+      String to = cities[random.nextInt(cities.length)];
+      long start = System.nanoTime();
+      Set<ArrayList<Route>> answer = coordinator.cheapestItinerary(from, to);
+      long middle = System.nanoTime();
+      Set<ArrayList<Route>> expected = airline.cheapestItinerary(from, to);
+      long end = System.nanoTime();
+      sharded += middle - start;
+      whole += end - middle;
+
+      String problem = null;
+      if (expected == null || expected.isEmpty()) {
+        if (answer != null && !answer.isEmpty())
+          problem = "found " + answer + " where there is no itinerary";
+      } else if (answer == null || answer.size() != 1) {
+        problem = "found " + answer;
+      } else {
+        ArrayList<Route> path = answer.iterator().next();
+        long price = price(expected.iterator().next());
+        String city = from;
+        for (Route route : path) {
+          if (!route.source.equals(city) || !route.equals(airline.retrieveDirectRoute(
+              route.source, route.destination)))
+            problem = "leg " + route + " is not a route after " + city;
+          city = route.destination;
+        }
+        if (!city.equals(to))
+          problem = "ends at " + city;
+        else if (price(path) != price)
+          problem = String.format("costs $%.2f, not $%.2f", price(path) / 100.0, price / 100.0);
+      }
+      if (problem != null) {
+        wrong++;
+        System.out.println(from + " to " + to + ": " + problem);
+      }
+    }
+    System.out.printf("%d queries, %d wrong; %.2f ms each sharded, %.2f ms on one system%n", n,
+        wrong, sharded / 1e6 / n, whole / 1e6 / n);
+  }
+
+  private static long price(List<Route> itinerary) {
+    long cents = 0;
+    for (Route route : itinerary)
+      cents += route.cents;
+    return cents;
+  }
+}
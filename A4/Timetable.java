@@ -0,0 +1,485 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * The scheduled flights over the routes of an AirlineSystem, for questions of
+ * time rather than price: when is the earliest one can arrive, and which
+ * departures are worth taking. Every flight flies one direction of a route of
+ * the network at a departure and an arrival time, and changing planes takes
+ * at least a minimum connection time.
+ *
+ * The flights are kept as one array of primitive connections sorted by
+ * departure time, and both queries are the Connection Scan Algorithm: a
+ * single pass over a stretch of that array, with no priority queue and no
+ * pointers to chase. A timetable is immutable; it keeps the routes it was
+ * built with even if they are later deleted from the AirlineSystem.
+ *
+ * Times are minutes counted from midnight of the first day of the timetable,
+ * written H:MM; hours past 23 are on the following days, so 25:10 is 1:10 the
+ * next morning.
+ *
+ * A timetable file is a routes file followed by a timetable section: a line
+ * "timetable" with the minimum connection time in minutes, then a flight per
+ * line as the numbers of its source and destination cities in the city list,
+ * its departure and its arrival:
+ *
+ * <pre>
+ * timetable 45
+ * 1 2 6:30 7:15
+ * 2 1 8:05 8:50
+ * </pre>
+ *
+ * loadRoutes reads such a file as a routes file and ignores the timetable.
+ *
+ * Usage: java Timetable file source destination [departure [latest-departure]]
+ */
+final public class Timetable {
+
+  private static final int INFINITY = Integer.MAX_VALUE;
+
+  private final String[] names; // the cities, by index.
+  private final Map<String, Integer> index;
+  private final int minConnection;
+  private final int size;
+  // 4 ints per flight in order of departure: departure, arrival, source and
+  // destination index, read together in one pass.
+  private final int[] connections;
+  private final Route[] routes; // routes[k] = the route flight k flies, out of its source.
+
+  /**
+   * A flight along one route from its source to its destination.
+   */
+  public static final class Flight {
+    public final Route route;
+    public final int departure;
+    public final int arrival;
+
+    /**
+     * @param route     the Route flown, read from source to destination
+     * @param departure the departure time in minutes
+     * @param arrival   the arrival time in minutes, after the departure
+     */
+    public Flight(Route route, int departure, int arrival) {
+      if (departure < 0 || arrival <= departure)
+        throw new IllegalArgumentException("a flight must arrive after it departs: "
+            + time(departure) + "-" + time(arrival));
+
+      this.route = route;
+      this.departure = departure;
+      this.arrival = arrival;
+    }
+
+    @Override
+    public String toString() {
+      return route.source + " " + time(departure) + " - " + route.destination + " "
+          + time(arrival);
+    }
+  }
+
+  /**
+   * builds a timetable of flights over the routes of an Airline system
+   *
+   * @param airline       the AirlineSystem whose routes are flown
+   * @param flights       the List<Flight> of flights, in any order
+   * @param minConnection the minimum connection time in minutes
+   * @throws CityNotFoundException if a flight is between cities not found in
+   *                               the Airline system
+   * @throws IllegalArgumentException if a flight flies no route of the Airline
+   *                                  system
+   */
+  public Timetable(AirlineSystem airline, List<Flight> flights, int minConnection)
+      throws CityNotFoundException {
+    if (minConnection < 0)
+      throw new IllegalArgumentException("minConnection must not be negative: " + minConnection);
+
+    this.minConnection = minConnection;
+    this.names = airline.retrieveCityNames().toArray(new String[0]);
+    this.index = new HashMap<String, Integer>(names.length * 2);
+    for (int i = 0; i < names.length; i++)
+      index.put(names[i], i);
+
+    // sort by departure through primitive keys of departure and position.
+    size = flights.size();
+    long[] order = new long[size];
+    for (int k = 0; k < size; k++)
+      order[k] = ((long) flights.get(k).departure << 32) | k;
+    Arrays.sort(order);
+
+    connections = new int[4 * size];
+    routes = new Route[size];
+    Set<Route> checked = Collections.newSetFromMap(new IdentityHashMap<Route, Boolean>());
+    for (int k = 0; k < size; k++) {
+      Flight flight = flights.get((int) order[k]);
+      Route route = flight.route;
+      if (!checked.contains(route)) {
+        Route flown = airline.retrieveDirectRoute(route.source, route.destination);
+        if (flown == null || !flown.equals(route))
+          throw new IllegalArgumentException("no route for flight " + flight);
+        checked.add(route);
+      }
+
+      connections[4 * k] = flight.departure;
+      connections[4 * k + 1] = flight.arrival;
+      connections[4 * k + 2] = index.get(route.source);
+      connections[4 * k + 3] = index.get(route.destination);
+      routes[k] = route;
+    }
+  }
+
+  /**
+   * reads the timetable section of a file whose routes are loaded in an
+   * Airline system
+   *
+   * @param fileName the String file name
+   * @param airline  the AirlineSystem the routes of the file are loaded in
+   * @return the Timetable, empty if the file has no timetable section
+   * @throws IOException if the file cannot be read, or a flight is malformed
+   *                     or flies no route of the Airline system
+   */
+  public static Timetable read(String fileName, AirlineSystem airline) throws IOException {
+    try (BufferedReader in = new BufferedReader(new FileReader(fileName), 1 << 16)) {
+      int n = Integer.parseInt(in.readLine().trim());
+      String[] cities = new String[n];
+      for (int i = 0; i < n; i++)
+        cities[i] = in.readLine().trim();
+
+      // skip the routes.
+      String line;
+      while ((line = in.readLine()) != null && !line.trim().startsWith("timetable"))
+        ;
+
+      int minConnection = 0;
+      List<Flight> flights = new ArrayList<Flight>();
+      Map<Long, Route> routes = new HashMap<Long, Route>(); // by source * n + destination.
+      if (line != null) {
+        String[] header = line.trim().split("\\s+");
+        if (header.length > 1)
+          minConnection = Integer.parseInt(header[1]);
+
+        while ((line = in.readLine()) != null) {
+          StringTokenizer f = new StringTokenizer(line);
+          if (f.countTokens() < 4)
+            continue;
+
+          int source = Integer.parseInt(f.nextToken()) - 1;
+          int destination = Integer.parseInt(f.nextToken()) - 1;
+          Route route = routes.get((long) source * n + destination);
+          if (route == null) {
+            route = airline.retrieveDirectRoute(cities[source], cities[destination]);
+            if (route == null)
+              throw new IOException("no route for flight " + line.trim());
+            routes.put((long) source * n + destination, route);
+          }
+          flights.add(new Flight(route, time(f.nextToken()), time(f.nextToken())));
+        }
+      }
+
+      return new Timetable(airline, flights, minConnection);
+    } catch (CityNotFoundException e) {
+      throw new IOException("city not loaded: " + e.getMessage(), e);
+    } catch (RuntimeException e) {
+      throw new IOException("malformed timetable in " + fileName + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @return the number of flights
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the minimum connection time in minutes
+   */
+  public int minConnection() {
+    return minConnection;
+  }
+
+  /**
+   * finds a journey that arrives at the destination as early as possible
+   * when leaving the source at or after a given time
+   *
+   * @param source      the String source city name
+   * @param destination the String destination city name
+   * @param departure   the earliest departure time in minutes
+   * @return a List<Flight> of the flights of the journey, empty if both cities
+   *         are the same, or null if no journey reaches the destination
+   * @throws CityNotFoundException if any of the two cities are not found
+   */
+  public List<Flight> earliestArrival(String source, String destination, int departure)
+      throws CityNotFoundException {
+    int s = indexOf(source);
+    int d = indexOf(destination);
+    if (s == d)
+      return new ArrayList<Flight>();
+
+    int[] via = new int[names.length]; // via[i] = flight into i of the journey, if arrival[i] is finite.
+    int[] arrival = earliestArrival(s, d, departure, via);
+    if (arrival[d] == INFINITY)
+      return null;
+
+    List<Flight> journey = new ArrayList<Flight>();
+    for (int x = d; x != s; x = connections[4 * via[x] + 2])
+      journey.add(flight(via[x]));
+    Collections.reverse(journey);
+    return journey;
+  }
+
+  /**
+   * finds the journeys worth taking between two cities when ready to leave
+   * between two times: the journey that arrives earliest for each time of
+   * readiness in between. Each leaves the source later than the one before
+   * it and arrives later too, as none is beaten by a journey leaving later
+   * and arriving as early. The last may leave after the latest departure,
+   * when waiting for it beats every earlier flight.
+   *
+   * @param source      the String source city name
+   * @param destination the String destination city name
+   * @param from        the earliest time of readiness in minutes
+   * @param to          the latest time of readiness in minutes
+   * @return a (possibly empty) List<List<Flight>> of journeys in order of
+   *         departure, each a List<Flight> of its flights
+   * @throws CityNotFoundException if any of the two cities are not found
+   */
+  public List<List<Flight>> profile(String source, String destination, int from, int to)
+      throws CityNotFoundException {
+    if (to < from)
+      throw new IllegalArgumentException("the latest departure is before the earliest: "
+          + time(from) + " " + time(to));
+
+    int s = indexOf(source);
+    int d = indexOf(destination);
+    List<List<Flight>> journeys = new ArrayList<List<Flight>>();
+    if (s == d)
+      return journeys;
+
+    // a journey that arrives after the earliest arrival of leaving at `to` is
+    // beaten by that one, so flights departing after it need not be scanned.
+    int latest = earliestArrival(s, d, to, new int[names.length])[d];
+    int first = first(from);
+    int end = (latest == INFINITY) ? size : first(latest);
+
+    // the profile of each city: the pairs of departure from it and arrival
+    // at the destination that no other pair beats, as lists chained through
+    // parallel arrays in order of departure and arrival both.
+    Profiles profiles = new Profiles(names.length);
+    for (int k = end - 1; k >= first; k--) {
+      int c = 4 * k;
+      int x = connections[c + 2];
+      int y = connections[c + 3];
+      if (x == d)
+        continue;
+
+      int arrival = (y == d) ? connections[c + 1]
+          : profiles.arrival(y, connections[c + 1] + minConnection);
+      if (arrival != INFINITY)
+        profiles.add(x, connections[c], arrival, k);
+    }
+
+    // follow each pair out of the source along the profiles it was built on,
+    // up to the first that leaves at `to` or later.
+    int best = INFINITY; // the earliest arrival of the journeys leaving later.
+    for (int e = profiles.head[s]; e != -1; e = profiles.next[e]) {
+      List<Flight> journey = new ArrayList<Flight>();
+      int k = profiles.flight[e];
+      journey.add(flight(k));
+      while (connections[4 * k + 3] != d) {
+        int y = connections[4 * k + 3];
+        k = profiles.flight[profiles.entry(y, connections[4 * k + 1] + minConnection)];
+        journey.add(flight(k));
+      }
+      journeys.add(journey);
+      if (profiles.departure[e] >= to)
+        break;
+    }
+
+    // a pair improved in place may have sped up journeys built on it; keep
+    // only those that leaving later does not match.
+    for (int i = journeys.size() - 1; i >= 0; i--) {
+      List<Flight> journey = journeys.get(i);
+      int arrival = journey.get(journey.size() - 1).arrival;
+      if (arrival >= best)
+        journeys.remove(i);
+      else
+        best = arrival;
+    }
+    return journeys;
+  }
+
+  // scans the flights from the first leaving at or after departure until
+  // none can arrive earlier at d, filling via with the flight into each
+  // city, and returns the earliest arrival at each city.
+  private int[] earliestArrival(int s, int d, int departure, int[] via) {
+    int[] arrival = new int[names.length];
+    Arrays.fill(arrival, INFINITY);
+    arrival[s] = departure;
+    for (int k = first(departure); k < size; k++) {
+      int c = 4 * k;
+      int leaves = connections[c];
+      if (leaves >= arrival[d])
+        break;
+
+      int x = connections[c + 2];
+      if (arrival[x] == INFINITY || arrival[x] + ((x == s) ? 0 : minConnection) > leaves)
+        continue;
+
+      int y = connections[c + 3];
+      if (connections[c + 1] < arrival[y]) {
+        arrival[y] = connections[c + 1];
+        via[y] = k;
+      }
+    }
+    return arrival;
+  }
+
+  // returns the first flight leaving at or after time.
+  private int first(int time) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (connections[4 * mid] < time)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  private Flight flight(int k) {
+    return new Flight(routes[k], connections[4 * k], connections[4 * k + 1]);
+  }
+
+  private int indexOf(String city) throws CityNotFoundException {
+    Integer i = index.get(city);
+    if (i == null)
+      throw new CityNotFoundException(city);
+    return i;
+  }
+
+  /*
+   * The profiles of one profile query. The entries of a city run from
+   * head[i] through next[], in order of departure; as flights are scanned
+   * latest first, a new entry goes in front, and only if it arrives earlier
+   * than the entry it goes in front of.
+   */
+  private static final class Profiles {
+    private final int[] head;
+    private int[] departure = new int[64];
+    private int[] arrival = new int[64];
+    private int[] flight = new int[64];
+    private int[] next = new int[64];
+    private int entries;
+
+    Profiles(int cities) {
+      head = new int[cities];
+      Arrays.fill(head, -1);
+    }
+
+    // the earliest arrival at the destination leaving city i at or after
+    // time.
+    int arrival(int i, int time) {
+      int e = entry(i, time);
+      return (e == -1) ? INFINITY : arrival[e];
+    }
+
+    // the first entry of city i leaving at or after time, or -1.
+    int entry(int i, int time) {
+      int e = head[i];
+      while (e != -1 && departure[e] < time)
+        e = next[e];
+      return e;
+    }
+
+    // adds the pair of flight k unless an entry leaving as late arrives as
+    // early.
+    void add(int i, int leaves, int arrives, int k) {
+      int h = head[i];
+      if (h != -1 && arrival[h] <= arrives)
+        return;
+
+      if (h != -1 && departure[h] == leaves) {
+        arrival[h] = arrives;
+        flight[h] = k;
+        return;
+      }
+
+      if (entries == departure.length) {
+        int n = entries * 2;
+        departure = Arrays.copyOf(departure, n);
+        arrival = Arrays.copyOf(arrival, n);
+        flight = Arrays.copyOf(flight, n);
+        next = Arrays.copyOf(next, n);
+      }
+      departure[entries] = leaves;
+      arrival[entries] = arrives;
+      flight[entries] = k;
+      next[entries] = h;
+      head[i] = entries++;
+    }
+  }
+
+  /**
+   * @param time a time written H:MM
+   * @return the time in minutes
+   */
+  public static int time(String time) {
+    int colon = time.indexOf(':');
+    if (colon < 0)
+      throw new IllegalArgumentException("a time must be written H:MM: " + time);
+    return Integer.parseInt(time.substring(0, colon)) * 60
+        + Integer.parseInt(time.substring(colon + 1));
+  }
+
+  /**
+   * @param minutes a time in minutes
+   * @return the time written H:MM, with hours past 23 on later days
+   */
+  public static String time(int minutes) {
+    return String.format("%d:%02d", minutes / 60, minutes % 60);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.err.println("Usage: java Timetable file source destination"
+          + " [departure [latest-departure]]");
+      System.exit(2);
+    }
+
+    AirlineSystem airline = new AirlineSystem();
+    if (!airline.loadRoutes(args[0])) {
+      System.err.println("cannot read " + args[0]);
+      System.exit(1);
+    }
+    Timetable timetable = read(args[0], airline);
+    int departure = (args.length > 3) ? time(args[3]) : 0;
+    int latest = (args.length > 4) ? time(args[4]) : departure + 24 * 60;
+    System.out.printf("%d flights, %d minutes to connect%n", timetable.size(),
+        timetable.minConnection());
+
+    List<Flight> journey = timetable.earliestArrival(args[1], args[2], departure);
+    System.out.println("earliest arrival leaving at " + time(departure) + " or later:");
+    if (journey == null)
+      System.out.println("  none");
+    else
+      for (Flight flight : journey)
+        System.out.println("  " + flight);
+
+    System.out.println("journeys leaving between " + time(departure) + " and "
+        + time(latest) + ":");
+    for (List<Flight> j : timetable.profile(args[1], args[2], departure, latest))
+      System.out.println("  " + time(j.get(0).departure) + " - " + time(j.get(j.size() - 1).arrival)
+          + ": " + j);
+  }
+}
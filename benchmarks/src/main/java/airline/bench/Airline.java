@@ -0,0 +1,167 @@
+package airline.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * An AirlineSystem seen from the benchmarks. The airline classes live in the
+ * default package, which JMH benchmarks cannot (and no named package can)
+ * refer to, so each AirlineInterface method is bound once to a constant
+ * MethodHandle; the JIT inlines calls through those like direct calls.
+ */
+final class Airline {
+  private static final MethodHandle NEW;
+  private static final MethodHandle LOAD_ROUTES;
+  private static final MethodHandle SAVE_ROUTES;
+  private static final MethodHandle RETRIEVE_CITY_NAMES;
+  private static final MethodHandle RETRIEVE_DIRECT_ROUTES_FROM;
+  private static final MethodHandle CHEAPEST_ITINERARY;
+  private static final MethodHandle CHEAPEST_ITINERARY_VIA;
+  private static final MethodHandle GET_MSTS;
+  private static final MethodHandle TRIPS_WITHIN_CITY;
+  private static final MethodHandle TRIPS_WITHIN;
+  private static final MethodHandle DELETE_ROUTE;
+  private static final MethodHandle DELETE_CITY;
+  private static final MethodHandle ADD_CITY;
+  private static final MethodHandle ADD_ROUTE;
+  private static final MethodHandle ROUTE_SOURCE;
+  private static final MethodHandle ROUTE_DESTINATION;
+  private static final MethodHandle ROUTE_DISTANCE;
+  private static final MethodHandle ROUTE_PRICE;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> system = Class.forName("AirlineSystem");
+      Class<?> route = Class.forName("Route");
+      NEW = lookup.findConstructor(system, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Object.class));
+      LOAD_ROUTES = virtual(lookup, system, "loadRoutes", boolean.class, String.class);
+      SAVE_ROUTES = virtual(lookup, system, "saveRoutes", boolean.class, String.class);
+      RETRIEVE_CITY_NAMES = virtual(lookup, system, "retrieveCityNames", Set.class);
+      RETRIEVE_DIRECT_ROUTES_FROM = virtual(lookup, system, "retrieveDirectRoutesFrom",
+          Set.class, String.class);
+      CHEAPEST_ITINERARY = virtual(lookup, system, "cheapestItinerary", Set.class,
+          String.class, String.class);
+      CHEAPEST_ITINERARY_VIA = virtual(lookup, system, "cheapestItinerary", Set.class,
+          String.class, String.class, String.class);
+      GET_MSTS = virtual(lookup, system, "getMSTs", Set.class);
+      TRIPS_WITHIN_CITY = virtual(lookup, system, "tripsWithin", Set.class, String.class,
+          double.class);
+      TRIPS_WITHIN = virtual(lookup, system, "tripsWithin", Set.class, double.class);
+      DELETE_ROUTE = virtual(lookup, system, "deleteRoute", boolean.class, String.class,
+          String.class);
+      DELETE_CITY = virtual(lookup, system, "deleteCity", void.class, String.class);
+      ADD_CITY = virtual(lookup, system, "addCity", boolean.class, String.class);
+      ADD_ROUTE = virtual(lookup, system, "addRoute", boolean.class, String.class,
+          String.class, int.class, double.class);
+      ROUTE_SOURCE = getter(lookup, route, "source", String.class);
+      ROUTE_DESTINATION = getter(lookup, route, "destination", String.class);
+      ROUTE_DISTANCE = getter(lookup, route, "distance", int.class);
+      ROUTE_PRICE = getter(lookup, route, "price", double.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // binds a public method, taking the receiver as an Object.
+  private static MethodHandle virtual(MethodHandles.Lookup lookup, Class<?> owner,
+      String name, Class<?> returns, Class<?>... parameters)
+      throws ReflectiveOperationException {
+    MethodHandle handle = lookup.findVirtual(owner, name,
+        MethodType.methodType(returns, parameters));
+    return handle.asType(handle.type().changeParameterType(0, Object.class));
+  }
+
+  // binds a public field of Route, taking the Route as an Object.
+  private static MethodHandle getter(MethodHandles.Lookup lookup, Class<?> owner,
+      String name, Class<?> type) throws ReflectiveOperationException {
+    MethodHandle handle = lookup.findGetter(owner, name, type);
+    return handle.asType(handle.type().changeParameterType(0, Object.class));
+  }
+
+  private final Object system;
+
+  Airline() throws Throwable {
+    system = (Object) NEW.invokeExact();
+  }
+
+  boolean loadRoutes(String fileName) throws Throwable {
+    return (boolean) LOAD_ROUTES.invokeExact(system, fileName);
+  }
+
+  boolean saveRoutes(String fileName) throws Throwable {
+    return (boolean) SAVE_ROUTES.invokeExact(system, fileName);
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<String> retrieveCityNames() throws Throwable {
+    return (Set<String>) (Set<?>) RETRIEVE_CITY_NAMES.invokeExact(system);
+  }
+
+  Set<?> retrieveDirectRoutesFrom(String city) throws Throwable {
+    return (Set<?>) RETRIEVE_DIRECT_ROUTES_FROM.invokeExact(system, city);
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<ArrayList<?>> cheapestItinerary(String source, String destination) throws Throwable {
+    return (Set<ArrayList<?>>) (Set<?>) CHEAPEST_ITINERARY.invokeExact(system, source,
+        destination);
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<ArrayList<?>> cheapestItinerary(String source, String transit, String destination)
+      throws Throwable {
+    return (Set<ArrayList<?>>) (Set<?>) CHEAPEST_ITINERARY_VIA.invokeExact(system, source,
+        transit, destination);
+  }
+
+  Set<?> getMSTs() throws Throwable {
+    return (Set<?>) GET_MSTS.invokeExact(system);
+  }
+
+  Set<?> tripsWithin(String city, double budget) throws Throwable {
+    return (Set<?>) TRIPS_WITHIN_CITY.invokeExact(system, city, budget);
+  }
+
+  Set<?> tripsWithin(double budget) throws Throwable {
+    return (Set<?>) TRIPS_WITHIN.invokeExact(system, budget);
+  }
+
+  boolean deleteRoute(String source, String destination) throws Throwable {
+    return (boolean) DELETE_ROUTE.invokeExact(system, source, destination);
+  }
+
+  void deleteCity(String city) throws Throwable {
+    DELETE_CITY.invokeExact(system, city);
+  }
+
+  boolean addCity(String city) throws Throwable {
+    return (boolean) ADD_CITY.invokeExact(system, city);
+  }
+
+  boolean addRoute(String source, String destination, int distance, double price)
+      throws Throwable {
+    return (boolean) ADD_ROUTE.invokeExact(system, source, destination, distance, price);
+  }
+
+  /**
+   * The fields of a Route, copied out so that it can be added back later.
+   */
+  static final class Leg {
+    final String source;
+    final String destination;
+    final int distance;
+    final double price;
+
+    Leg(Object route) throws Throwable {
+      source = (String) ROUTE_SOURCE.invokeExact(route);
+      destination = (String) ROUTE_DESTINATION.invokeExact(route);
+      distance = (int) ROUTE_DISTANCE.invokeExact(route);
+      price = (double) ROUTE_PRICE.invokeExact(route);
+    }
+  }
+}
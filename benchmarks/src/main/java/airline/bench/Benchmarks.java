@@ -0,0 +1,38 @@
+package airline.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like JMH's own launcher, taking the same options, but
+ * with the GC profiler always on so every result carries its allocation rate.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ */
+public final class Benchmarks {
+
+  private Benchmarks() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    if (cli.shouldHelp()) {
+      cli.showHelp();
+      return;
+    }
+    if (cli.shouldList()) {
+      new Runner(cli).list();
+      return;
+    }
+
+    OptionsBuilder options = new OptionsBuilder();
+    options.parent(cli);
+    if (cli.getProfilers().stream().noneMatch(p -> p.getKlass().equals("gc")
+        || p.getKlass().equals(GCProfiler.class.getName()))) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,60 @@
+package airline.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loadRoutes, which parses the file, builds the graph and builds
+ * the spanning forest, and getMSTs on a freshly loaded network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+  /** "a5data1", "a5data2", "uniform", "hubs" or "scalefree". */
+  @Param({ "a5data1", "a5data2", "hubs" })
+  public String network;
+
+  /** number of cities of a generated network. */
+  @Param({ "10000" })
+  public int cities;
+
+  /** average number of routes per city of a generated network. */
+  @Param({ "8" })
+  public int degree;
+
+  private Airline airline;
+  private String file;
+
+  @Setup
+  public void setUp() throws Throwable {
+    airline = new Airline();
+    file = Networks.file(network, cities, degree).getPath();
+  }
+
+  @Benchmark
+  public boolean loadRoutes() throws Throwable {
+    return airline.loadRoutes(file);
+  }
+
+  @Benchmark
+  public Object loadRoutesThenGetMSTs() throws Throwable {
+    airline.loadRoutes(file);
+    return airline.getMSTs();
+  }
+}
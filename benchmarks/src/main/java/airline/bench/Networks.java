@@ -0,0 +1,60 @@
+package airline.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The route files the benchmarks load: the two sample files, or a network
+ * of a given size and topology written by NetworkGenerator.
+ */
+final class Networks {
+  private static final MethodHandle GENERATE;
+
+  static {
+    try {
+      GENERATE = MethodHandles.publicLookup().findStatic(Class.forName("NetworkGenerator"),
+          "main", MethodType.methodType(void.class, String[].class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Networks() {
+  }
+
+  /**
+   * returns the route file for a network
+   *
+   * @param network "a5data1", "a5data2", or the topology of a generated
+   *                network: "uniform", "hubs" or "scalefree"
+   * @param cities  the number of cities of a generated network
+   * @param degree  the average number of routes per city of a generated
+   *                network
+   * @return the route File
+   */
+  static File file(String network, int cities, int degree) throws Throwable {
+    if (!network.startsWith("a5data")) {
+      File file = File.createTempFile("network", ".txt");
+      file.deleteOnExit();
+      GENERATE.invokeExact(new String[] { String.valueOf(cities), file.getPath(),
+          "--topology", network, "--degree", String.valueOf(degree), "--seed", "42" });
+      return file;
+    }
+
+    // the sample files sit next to the sources; the benchmarks may be run
+    // from the project root or from this module.
+    String dir = System.getProperty("airline.data");
+    for (String candidate : (dir != null) ? new String[] { dir }
+        : new String[] { "A4", "../A4" }) {
+      File file = new File(candidate, network + ".txt");
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    throw new IOException("cannot find " + network
+        + ".txt; set -Dairline.data to the directory holding it");
+  }
+}
@@ -0,0 +1,118 @@
+package airline.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the read-only AirlineInterface methods on one loaded network.
+ * The cities queried cycle through a fixed random sample, so every run asks
+ * the same questions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+  /** "a5data1", "a5data2", "uniform", "hubs" or "scalefree". */
+  @Param({ "a5data1", "a5data2", "hubs" })
+  public String network;
+
+  /** number of cities of a generated network. */
+  @Param({ "10000" })
+  public int cities;
+
+  /** average number of routes per city of a generated network. */
+  @Param({ "8" })
+  public int degree;
+
+  /** budget of the tripsWithin queries, in dollars. */
+  @Param({ "250" })
+  public double budget;
+
+  private static final int SAMPLE = 1024;
+
+  private Airline airline;
+  private File saved;
+  private String[] names;
+  private int next;
+
+  @Setup
+  public void setUp() throws Throwable {
+    airline = new Airline();
+    airline.loadRoutes(Networks.file(network, cities, degree).getPath());
+    saved = File.createTempFile("saved", ".txt");
+    saved.deleteOnExit();
+
+    List<String> all = new ArrayList<String>(airline.retrieveCityNames());
+    Random random = new Random(7);
+    names = new String[SAMPLE];
+    for (int i = 0; i < SAMPLE; i++) {
+      names[i] = all.get(random.nextInt(all.size()));
+    }
+  }
+
+  // returns the next sampled city.
+  private String city() {
+    next = (next + 1) & (SAMPLE - 1);
+    return names[next];
+  }
+
+  @Benchmark
+  public Object retrieveCityNames() throws Throwable {
+    return airline.retrieveCityNames();
+  }
+
+  @Benchmark
+  public Object retrieveDirectRoutesFrom() throws Throwable {
+    return airline.retrieveDirectRoutesFrom(city());
+  }
+
+  @Benchmark
+  public Object cheapestItinerary() throws Throwable {
+    return airline.cheapestItinerary(city(), city());
+  }
+
+  @Benchmark
+  public Object cheapestItineraryVia() throws Throwable {
+    return airline.cheapestItinerary(city(), city(), city());
+  }
+
+  @Benchmark
+  public Object tripsWithinCity() throws Throwable {
+    return airline.tripsWithin(city(), budget);
+  }
+
+  @Benchmark
+  public Object tripsWithin() throws Throwable {
+    return airline.tripsWithin(budget);
+  }
+
+  // the spanning forest is built by loadRoutes and kept up to date, so this
+  // measures handing it out; LoadBenchmark measures building it.
+  @Benchmark
+  public Object getMSTs() throws Throwable {
+    return airline.getMSTs();
+  }
+
+  @Benchmark
+  public boolean saveRoutes() throws Throwable {
+    return airline.saveRoutes(saved.getPath());
+  }
+}
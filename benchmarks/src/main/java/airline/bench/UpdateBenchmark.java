@@ -0,0 +1,127 @@
+package airline.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks deleteRoute and deleteCity. Each deletion is undone after it is
+ * timed, outside the measurement, so every invocation deletes from the same
+ * network; the times are sampled per invocation because the undo would
+ * otherwise count against throughput.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+
+  /**
+   * The network deleted from, and a list of its routes to pick from.
+   */
+  @State(Scope.Thread)
+  public static class Network {
+
+    /** "a5data1", "a5data2", "uniform", "hubs" or "scalefree". */
+    @Param({ "a5data1", "a5data2", "hubs" })
+    public String network;
+
+    /** number of cities of a generated network. */
+    @Param({ "10000" })
+    public int cities;
+
+    /** average number of routes per city of a generated network. */
+    @Param({ "8" })
+    public int degree;
+
+    Airline airline;
+    List<Airline.Leg> routes;
+    Random random;
+
+    @Setup
+    public void setUp() throws Throwable {
+      airline = new Airline();
+      airline.loadRoutes(Networks.file(network, cities, degree).getPath());
+      routes = new ArrayList<Airline.Leg>();
+      for (String name : airline.retrieveCityNames()) {
+        for (Object r : airline.retrieveDirectRoutesFrom(name)) {
+          routes.add(new Airline.Leg(r));
+        }
+      }
+      random = new Random(11);
+    }
+
+    Airline.Leg pick() {
+      return routes.get(random.nextInt(routes.size()));
+    }
+  }
+
+  /**
+   * A random route, added back after it is deleted.
+   */
+  @State(Scope.Thread)
+  public static class RouteToDelete {
+    Airline.Leg route;
+
+    @Setup(Level.Invocation)
+    public void pick(Network n) {
+      route = n.pick();
+    }
+
+    @TearDown(Level.Invocation)
+    public void restore(Network n) throws Throwable {
+      n.airline.addRoute(route.source, route.destination, route.distance, route.price);
+    }
+  }
+
+  /**
+   * A random city, added back with its routes after it is deleted.
+   */
+  @State(Scope.Thread)
+  public static class CityToDelete {
+    String city;
+    List<Airline.Leg> routes;
+
+    @Setup(Level.Invocation)
+    public void pick(Network n) throws Throwable {
+      city = n.pick().source;
+      routes = new ArrayList<Airline.Leg>();
+      for (Object r : n.airline.retrieveDirectRoutesFrom(city)) {
+        routes.add(new Airline.Leg(r));
+      }
+    }
+
+    @TearDown(Level.Invocation)
+    public void restore(Network n) throws Throwable {
+      n.airline.addCity(city);
+      for (Airline.Leg r : routes) {
+        n.airline.addRoute(r.source, r.destination, r.distance, r.price);
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean deleteRoute(Network n, RouteToDelete r) throws Throwable {
+    return n.airline.deleteRoute(r.route.source, r.route.destination);
+  }
+
+  @Benchmark
+  public void deleteCity(Network n, CityToDelete c) throws Throwable {
+    n.airline.deleteCity(c.city);
+  }
+}